@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformers.gradle;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/// Runs the plugin against small generated builds, checking the artifacts it produces.
+///
+/// Each build resolves synthetic jars from a flat directory repository, so nothing is downloaded for them. To avoid
+/// downloading AccessTransformers, a local fat jar can be given with
+/// `-PfunctionalTest.tool=path/to/accesstransformers-fatjar.jar`. Versions of AccessTransformers before 9 can't run
+/// in-process or on workers, so those paths fall back to a new JVM without it, and can't transform classes directories.
+class AccessTransformersPluginTest {
+    private static final String TOOL = System.getProperty("functionalTest.tool");
+    private static final int ACC_PUBLIC = 0x0001;
+
+    @TempDir Path dir;
+    private Path build;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.build = this.dir.resolve("build");
+        var repo = this.build.resolve("repo");
+        Files.createDirectories(repo);
+        writeLibrary(repo.resolve("lib-1.0.jar"), "test/lib/A", "test/lib/B");
+        writeLibrary(repo.resolve("other-1.0.jar"), "test/other/C");
+
+        Files.writeString(this.build.resolve("settings.gradle"), """
+            rootProject.name = 'test'
+
+            dependencyResolutionManagement {
+                repositories {
+                    flatDir { dirs file('repo') }
+                }
+            }
+            """);
+        Files.writeString(this.build.resolve("accesstransformer.cfg"), "public test.lib.A\n");
+    }
+
+    @Test
+    void inProcessMatchesFork() throws IOException {
+        // Registers the transform by hand for each mode, with separate stores so neither reuses the other's output
+        this.buildScript("""
+            [inProcess: true, fork: false].each { mode, inProcess ->
+                def attribute = Attribute.of("test.${mode}", Boolean)
+                dependencies {
+                    attributesSchema.attribute(attribute)
+                    artifactTypes.named(ArtifactTypeDefinition.JAR_TYPE) { attributes.attribute(attribute, false) }
+                    registerTransform(ArtifactAccessTransformer) {
+                        from.attribute(ArtifactTypeDefinition.ARTIFACT_TYPE_ATTRIBUTE, ArtifactTypeDefinition.JAR_TYPE).attribute(attribute, false)
+                        to.attribute(ArtifactTypeDefinition.ARTIFACT_TYPE_ATTRIBUTE, ArtifactTypeDefinition.JAR_TYPE).attribute(attribute, true)
+                        parameters(ArtifactAccessTransformer.Parameters.defaults(project) { p ->
+                            p.config = file('accesstransformer.cfg')
+                            p.inProcess = inProcess
+                            p.workers.value((AccessTransformersWorkers) null)
+                            p.storeDir = layout.buildDirectory.dir("store/${mode}")
+                        })
+                    }
+                }
+
+                def jars = configurations.create(mode) {
+                    canBeConsumed = false
+                    attributes.attribute(attribute, true)
+                }
+                dependencies.add(mode, 'test:lib:1.0')
+                tasks.register("${mode}Jars", Sync) {
+                    from jars
+                    into layout.buildDirectory.dir("jars/${mode}")
+                }
+            }
+            """);
+        this.run("inProcessJars", "forkJars");
+
+        var inProcess = read(this.build.resolve("build/jars/inProcess/lib-1.0.jar"));
+        var fork = read(this.build.resolve("build/jars/fork/lib-1.0.jar"));
+        assertEquals(new ArrayList<>(fork.keySet()), new ArrayList<>(inProcess.keySet()));
+        for (var name : fork.keySet())
+            assertArrayEquals(fork.get(name), inProcess.get(name), name);
+        assertEquals(ACC_PUBLIC, classAccess(inProcess.get("test/lib/A.class")) & ACC_PUBLIC);
+        assertEquals(0, classAccess(inProcess.get("test/lib/B.class")) & ACC_PUBLIC);
+    }
+
+    @Test
+    void untargetedJarsAreSkipped() throws IOException {
+        // Rules for the members of an inner class only apply to the jar holding it
+        Files.writeString(this.build.resolve("accesstransformer.cfg"), "public test.lib.A\npublic test.lib.A$Inner f\n");
+        this.buildScript("""
+            dependencies {
+                implementation('test:lib:1.0') { accessTransformers.configure(it) }
+                implementation('test:other:1.0') { accessTransformers.configure(it) }
+            }
+
+            tasks.register('classpath', Sync) {
+                from configurations.compileClasspath
+                into layout.buildDirectory.dir('classpath')
+            }
+            """);
+        var result = this.run("classpath", "--info");
+
+        assertTrue(result.getOutput().contains("Access transformer config targets no classes in other-1.0.jar, skipping transformation"), result.getOutput());
+        assertArrayEquals(Files.readAllBytes(this.build.resolve("repo/other-1.0.jar")), Files.readAllBytes(this.build.resolve("build/classpath/other-1.0.jar")));
+        var lib = read(this.build.resolve("build/classpath/lib-1.0-at.jar"));
+        assertEquals(ACC_PUBLIC, classAccess(lib.get("test/lib/A.class")) & ACC_PUBLIC);
+    }
+
+    @Test
+    void storedJarsAreLinkedAndNotTouched() throws IOException {
+        this.buildScript("""
+            dependencies {
+                implementation('test:lib:1.0') { accessTransformers.configure(it) }
+            }
+
+            // Records where the resolved files are, rather than copying them
+            tasks.register('classpath') {
+                def files = configurations.compileClasspath
+                def output = layout.buildDirectory.file('classpath.txt')
+                inputs.files(files)
+                outputs.file(output)
+                outputs.upToDateWhen { false }
+                doLast { output.get().asFile.text = files.files.join('\\n') }
+            }
+            """);
+        this.run("classpath");
+
+        var resolved = Path.of(Files.readAllLines(this.build.resolve("build/classpath.txt")).get(0));
+        assertEquals("lib-1.0-at.jar", resolved.getFileName().toString());
+        List<Path> stored;
+        try (var files = Files.walk(this.dir.resolve("testkit"))) {
+            stored = files.filter(p -> p.getFileName().toString().matches("[0-9a-f]{40}\\.jar")).toList();
+        }
+        assertEquals(1, stored.size(), stored::toString);
+        var jar = stored.get(0);
+        // Different paths are only the same file if one is a link to the other
+        assertTrue(Files.isSameFile(jar, resolved), "Output is a hard link to the stored jar");
+        var used = jar.resolveSibling(jar.getFileName().toString().replace(".jar", ".used"));
+        assertTrue(Files.exists(used), "Use of the stored jar is recorded");
+
+        // A comment changes the config, but not its slice, so the transform runs again and finds the stored jar
+        var old = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(jar, old);
+        Files.writeString(this.build.resolve("accesstransformer.cfg"), "# Comment\n", StandardOpenOption.APPEND);
+        this.run("classpath");
+
+        assertEquals(old, Files.getLastModifiedTime(jar), "Stored jar is left untouched");
+        assertTrue(Files.getLastModifiedTime(used).toMillis() > 0, "Use of the stored jar is recorded");
+    }
+
+    @Test
+    void metricsAreReported() throws IOException {
+        this.buildScript("""
+            dependencies {
+                implementation('test:lib:1.0') { accessTransformers.configure(it) }
+                implementation('test:other:1.0') { accessTransformers.configure(it) }
+            }
+
+            tasks.register('classpath', Sync) {
+                from configurations.compileClasspath
+                into layout.buildDirectory.dir('classpath')
+            }
+            """);
+        this.run("classpath");
+
+        // Every transform is written on its own line
+        var report = Files.readAllLines(this.build.resolve("build/reports/accesstransformers/transforms.json"));
+        var lib = report.stream().filter(l -> l.contains("\"artifact\": \"lib-1.0.jar\"")).findFirst().orElseThrow();
+        assertTrue(lib.contains("\"outcome\": \"TRANSFORMED\""), lib);
+        assertTrue(lib.contains("\"classesScanned\": 2"), lib);
+        assertTrue(lib.contains("\"classesChanged\": 1"), lib);
+        assertTrue(lib.matches(".*\"bytesWritten\": [1-9].*"), lib);
+        // Only versions of AccessTransformers that write stats know how long parsing took
+        if (TOOL != null)
+            assertTrue(lib.contains("\"parseMillis\": "), lib);
+        var other = report.stream().filter(l -> l.contains("\"artifact\": \"other-1.0.jar\"")).findFirst().orElseThrow();
+        assertTrue(other.contains("\"outcome\": \"UNTARGETED\""), other);
+    }
+
+    @Test
+    void classesDirectoriesAreTransformed() throws IOException {
+        assumeTrue(TOOL != null, "The default version of AccessTransformers can't transform directories");
+        this.classesDirectoriesBuild();
+        this.run("compileJava");
+
+        // Only compiles if the class is public on the compile classpath, while the producer's own classes are untouched
+        assertTrue(Files.exists(this.build.resolve("build/classes/java/main/test/app/Main.class")));
+        assertEquals(0, classAccess(Files.readAllBytes(this.build.resolve("lib/build/classes/java/main/test/lib/A.class"))) & ACC_PUBLIC);
+    }
+
+    @Test
+    void classesDirectoriesRequireNewerTool() throws IOException {
+        assumeTrue(TOOL == null, "A local AccessTransformers can transform directories");
+        this.classesDirectoriesBuild();
+        var result = this.runner("compileJava").buildAndFail();
+
+        assertTrue(result.getOutput().contains("AccessTransformers cannot transform classes directories"), result.getOutput());
+    }
+
+    @Test
+    void classesDirectoriesKeepConsumersApart() throws IOException {
+        assumeTrue(TOOL != null, "The default version of AccessTransformers can't transform directories");
+        // Two consumers of the same classes directory, each only compiling if its own config was applied
+        Files.writeString(this.build.resolve("settings.gradle"), "include 'lib', 'a', 'b'\n", StandardOpenOption.APPEND);
+        var lib = this.build.resolve("lib");
+        Files.createDirectories(lib.resolve("src/main/java/test/lib"));
+        Files.writeString(lib.resolve("build.gradle"), "plugins { id 'java-library' }\n");
+        Files.writeString(lib.resolve("src/main/java/test/lib/A.java"), "package test.lib;\n\nclass A { }\n");
+        Files.writeString(lib.resolve("src/main/java/test/lib/B.java"), "package test.lib;\n\nclass B { }\n");
+        for (var name : List.of("A", "B")) {
+            var consumer = this.build.resolve(name.toLowerCase(Locale.ROOT));
+            Files.createDirectories(consumer.resolve("src/main/java/test/app"));
+            Files.writeString(consumer.resolve("accesstransformer.cfg"), "public test.lib." + name + "\n");
+            Files.writeString(consumer.resolve("src/main/java/test/app/Main.java"), "package test.app;\n\nclass Main {\n    test.lib." + name + " field;\n}\n");
+            this.buildScript(consumer, """
+                accessTransformers.options {
+                    transformClassesDirectories = true
+                }
+
+                dependencies {
+                    implementation(project(':lib')) { accessTransformers.configure(it) }
+                }
+                """);
+        }
+        Files.writeString(this.build.resolve("build.gradle"), "");
+
+        this.run("--parallel", "compileJava");
+        assertTrue(Files.exists(this.build.resolve("a/build/classes/java/main/test/app/Main.class")));
+        assertTrue(Files.exists(this.build.resolve("b/build/classes/java/main/test/app/Main.class")));
+    }
+
+    /// Writes a build depending on a project holding the targeted class, consumed as its classes directory.
+    private void classesDirectoriesBuild() throws IOException {
+        Files.writeString(this.build.resolve("settings.gradle"), "include 'lib'\n", StandardOpenOption.APPEND);
+        var lib = this.build.resolve("lib");
+        Files.createDirectories(lib.resolve("src/main/java/test/lib"));
+        Files.writeString(lib.resolve("build.gradle"), "plugins { id 'java-library' }\n");
+        Files.writeString(lib.resolve("src/main/java/test/lib/A.java"), "package test.lib;\n\nclass A { }\n");
+        Files.createDirectories(this.build.resolve("src/main/java/test/app"));
+        Files.writeString(this.build.resolve("src/main/java/test/app/Main.java"), "package test.app;\n\nclass Main {\n    test.lib.A a;\n}\n");
+
+        this.buildScript("""
+            accessTransformers.options {
+                transformClassesDirectories = true
+            }
+
+            dependencies {
+                implementation(project(':lib')) { accessTransformers.configure(it) }
+            }
+            """);
+    }
+
+    /// Writes the build script, applying the plugin with the [local tool][#TOOL] if there is one.
+    private void buildScript(String script) throws IOException {
+        this.buildScript(this.build, script);
+    }
+
+    /// Writes the build script of the given project, applying the plugin with the [local tool][#TOOL] if there is one.
+    private void buildScript(Path project, String script) throws IOException {
+        var options = TOOL == null ? "" : "\n    classpath.setFrom('" + Path.of(TOOL).toAbsolutePath().toString().replace("\\", "\\\\") + "')";
+        Files.writeString(project.resolve("build.gradle"), """
+            import net.minecraftforge.accesstransformers.gradle.AccessTransformersWorkers
+            import net.minecraftforge.accesstransformers.gradle.ArtifactAccessTransformer
+            import org.gradle.api.artifacts.type.ArtifactTypeDefinition
+
+            plugins {
+                id 'java'
+                id 'net.minecraftforge.accesstransformers'
+            }
+
+            accessTransformers.options {
+                config = file('accesstransformer.cfg')%s
+            }
+
+            """.formatted(options) + script);
+    }
+
+    private BuildResult run(String... args) {
+        return this.runner(args).build();
+    }
+
+    private GradleRunner runner(String... args) {
+        var arguments = new ArrayList<>(List.of(args));
+        arguments.add("--stacktrace");
+        return GradleRunner.create()
+            .withProjectDir(this.build.toFile())
+            .withTestKitDir(this.dir.resolve("testkit").toFile())
+            .withPluginClasspath()
+            .withArguments(arguments);
+    }
+
+    static Map<String, byte[]> read(Path jar) throws IOException {
+        var ret = new LinkedHashMap<String, byte[]>();
+        try (var zip = new ZipFile(jar.toFile())) {
+            for (var entries = zip.entries(); entries.hasMoreElements(); ) {
+                var entry = entries.nextElement();
+                try (var is = zip.getInputStream(entry)) {
+                    ret.put(entry.getName(), is.readAllBytes());
+                }
+            }
+        }
+        return ret;
+    }
+
+    /// Writes a jar of package-private classes, so every rule targeting them changes something.
+    static void writeLibrary(Path jar, String... classes) throws IOException {
+        try (var out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (var name : classes) {
+                out.putNextEntry(new ZipEntry(name + ".class"));
+                out.write(classFile(name));
+                out.closeEntry();
+            }
+        }
+    }
+
+    static byte[] classFile(String name) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);  // minor version
+            out.writeShort(52); // Java 8
+            out.writeShort(5);  // constant pool count, plus one
+            out.writeByte(1);   // #1 Utf8
+            out.writeUTF(name);
+            out.writeByte(7);   // #2 Class #1
+            out.writeShort(1);
+            out.writeByte(1);   // #3 Utf8
+            out.writeUTF("java/lang/Object");
+            out.writeByte(7);   // #4 Class #3
+            out.writeShort(3);
+            out.writeShort(0x0020); // ACC_SUPER, package-private
+            out.writeShort(2);  // this class
+            out.writeShort(4);  // super class
+            out.writeShort(0);  // interfaces
+            out.writeShort(0);  // fields
+            out.writeShort(0);  // methods
+            out.writeShort(0);  // attributes
+        }
+        return bytes.toByteArray();
+    }
+
+    /// Reads the access flags of a class, which follow its constant pool.
+    static int classAccess(byte[] data) throws IOException {
+        var in = new DataInputStream(new ByteArrayInputStream(data));
+        in.skipBytes(8);
+        int count = in.readUnsignedShort();
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1 -> in.readUTF();
+                case 7, 8, 16, 19, 20 -> in.skipBytes(2);
+                case 15 -> in.skipBytes(3);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipBytes(4);
+                case 5, 6 -> {
+                    // Longs and doubles take two entries
+                    in.skipBytes(8);
+                    i++;
+                }
+                default -> throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        return in.readUnsignedShort();
+    }
+}
@@ -93,5 +93,16 @@ public sealed interface AccessTransformersContainer permits AccessTransformersCo
         ///
         /// @return The property for the arguments.
         ListProperty<Object> getArgs();
+
+        /// Gets whether project dependencies consumed as classes directories, such as on the compile classpath, are
+        /// transformed as directories rather than through their jars.
+        ///
+        /// Classes directories are transformed incrementally, so after editing the producing project only its changed
+        /// classes are transformed again. The [arguments][#getArgs()] are used for them too, with `--inJar` and
+        /// `--outJar` passed as `--inDir` and `--outDir`. This requires a version of AccessTransformers that supports
+        /// the `--inDir` option, older versions fail the build, and is disabled by default.
+        ///
+        /// @return The property for whether to transform classes directories
+        Property<Boolean> getTransformClassesDirectories();
     }
 }
@@ -5,13 +5,13 @@
 package net.minecraftforge.accesstransformers.gradle;
 
 import org.gradle.api.Action;
-import org.gradle.api.Project;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.logging.LogLevel;
 import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
 import org.gradle.jvm.toolchain.JavaLauncher;
 
 import javax.inject.Inject;
@@ -23,10 +23,11 @@ abstract class AccessTransformersContainerImpl implements AccessTransformersCont
 
     @Inject
     public AccessTransformersContainerImpl(
-        Project project,
+        AccessTransformersPlugin plugin,
+        Provider<JavaLauncher> javaLauncher,
         Action<? super AccessTransformersContainer.Options> options
     ) {
-        options.execute(this.options = this.getObjects().newInstance(OptionsImpl.class, project));
+        options.execute(this.options = this.getObjects().newInstance(OptionsImpl.class, plugin, javaLauncher));
     }
 
     @Override
@@ -49,18 +50,18 @@ abstract class AccessTransformersContainerImpl implements AccessTransformersCont
         private final Property<String> mainClass = this.getObjects().property(String.class);
         private final Property<JavaLauncher> javaLauncher = this.getObjects().property(JavaLauncher.class);
         private final ListProperty<Object> args = this.getObjects().listProperty(Object.class);
+        private final Property<Boolean> transformClassesDirectories = this.getObjects().property(Boolean.class);
 
         protected abstract @Inject ObjectFactory getObjects();
 
         @Inject
-        public OptionsImpl(Project project) {
-            var plugin = project.getPlugins().getPlugin(AccessTransformersPlugin.class);
-
+        public OptionsImpl(AccessTransformersPlugin plugin, Provider<JavaLauncher> javaLauncher) {
             this.logLevel.convention(LogLevel.INFO);
             this.classpath.from(plugin.getTool(Tools.ACCESSTRANSFORMERS));
             //this.mainClass.convention(Tools.ACCESSTRANSFORMERS.getMainClass());
-            this.javaLauncher.convention(Util.launcherFor(project, Tools.ACCESSTRANSFORMERS.getJavaVersion()));
+            this.javaLauncher.convention(javaLauncher);
             this.args.convention(Constants.ACCESSTRANSFORMERS_DEFAULT_ARGS);
+            this.transformClassesDirectories.convention(false);
         }
 
         @Override
@@ -92,5 +93,10 @@ abstract class AccessTransformersContainerImpl implements AccessTransformersCont
         public ListProperty<Object> getArgs() {
             return this.args;
         }
+
+        @Override
+        public Property<Boolean> getTransformClassesDirectories() {
+            return this.transformClassesDirectories;
+        }
     }
 }
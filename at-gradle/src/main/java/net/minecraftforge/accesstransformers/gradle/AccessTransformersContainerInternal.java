@@ -5,13 +5,15 @@
 package net.minecraftforge.accesstransformers.gradle;
 
 import org.gradle.api.Action;
-import org.gradle.api.Project;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.reflect.HasPublicType;
 import org.gradle.api.reflect.TypeOf;
+import org.gradle.jvm.toolchain.JavaLauncher;
 
 non-sealed interface AccessTransformersContainerInternal extends AccessTransformersContainer, HasPublicType {
-    static AccessTransformersContainer register(Project project, Action<? super Options> options) {
-        return project.getObjects().newInstance(AccessTransformersContainerImpl.class, project, options);
+    static AccessTransformersContainer register(ObjectFactory objects, AccessTransformersPlugin plugin, Provider<JavaLauncher> javaLauncher, Action<? super Options> options) {
+        return objects.newInstance(AccessTransformersContainerImpl.class, plugin, javaLauncher, options);
     }
 
     @Override
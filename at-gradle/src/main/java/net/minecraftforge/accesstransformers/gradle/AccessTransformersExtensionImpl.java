@@ -4,7 +4,6 @@
  */
 package net.minecraftforge.accesstransformers.gradle;
 
-import net.minecraftforge.gradleutils.shared.Closures;
 import org.codehaus.groovy.runtime.StringGroovyMethods;
 import org.gradle.api.Action;
 import org.gradle.api.InvalidUserDataException;
@@ -22,15 +21,20 @@ import org.gradle.api.attributes.Category;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.api.model.ObjectFactory;
-import org.gradle.api.provider.ProviderFactory;
+import org.gradle.api.provider.Provider;
+import org.gradle.jvm.toolchain.JavaLauncher;
 import org.jetbrains.annotations.Nullable;
 
 import javax.inject.Inject;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HexFormat;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -38,22 +42,24 @@ import java.util.stream.Collectors;
 abstract class AccessTransformersExtensionImpl implements AccessTransformersExtensionInternal {
     private static final Logger LOGGER = Logging.getLogger(AccessTransformersExtension.class);
 
-    private final Project project;
-
     private final AccessTransformersPlugin plugin;
+    private final String projectPath;
+    private final DependencyHandler dependencies;
+    private final Provider<JavaLauncher> javaLauncher;
     private final AccessTransformersProblems problems = this.getObjects().newInstance(AccessTransformersProblems.class);
 
     private @Nullable AccessTransformersContainer container;
 
     protected abstract @Inject ObjectFactory getObjects();
 
-    protected abstract @Inject ProviderFactory getProviders();
-
     @Inject
     public AccessTransformersExtensionImpl(AccessTransformersPlugin plugin, Project project) {
-        this.project = project;
         this.plugin = plugin;
+        this.projectPath = project.getPath();
+        this.dependencies = project.getDependencies();
+        this.javaLauncher = Util.launcherFor(project, Tools.ACCESSTRANSFORMERS.getJavaVersion());
 
+        // The project itself is not kept, so nothing run while resolving can reach into it
         project.getConfigurations().configureEach(c -> c.withDependencies(d -> this.apply(c)));
     }
 
@@ -87,13 +93,12 @@ abstract class AccessTransformersExtensionImpl implements AccessTransformersExte
             });
 
         for (var dependency : projectDependencies) {
-            var configs = AccessTransformersConfigurationInternal.get(dependency);
-            var attributes = new ArrayList<Attribute<Boolean>>(configs.size());
-            for (var config : configs) {
-                attributes.add(this.register(dependency, config));
+            var configs = new LinkedHashMap<AccessTransformersConfigurationInternal, Object>();
+            for (var config : AccessTransformersConfigurationInternal.get(dependency)) {
+                configs.put(config, dependency);
             }
 
-            this.applyToProject(configuration, dependency.getPath(), attributes);
+            this.applyToProject(configuration, dependency.getPath(), this.register(configs));
         }
 
         for (var entry : moduleDependencies.entrySet()) {
@@ -102,13 +107,12 @@ abstract class AccessTransformersExtensionImpl implements AccessTransformersExte
             var module = entry.getKey();
             var moduleSelector = "%s%s".formatted(module.getModule().toString(), module.getVersion() != null ? ":" + module.getVersion() : "");
 
-            var configs = AccessTransformersConfigurationInternal.get(dependency);
-            var attributes = new ArrayList<Attribute<Boolean>>(configs.size());
-            for (var config : configs) {
-                attributes.add(this.register(dependency, config));
+            var configs = new LinkedHashMap<AccessTransformersConfigurationInternal, Object>();
+            for (var config : AccessTransformersConfigurationInternal.get(dependency)) {
+                configs.put(config, dependency);
             }
 
-            // Check if we have a constraint that matches the dependency, so we can combine AT attributes.
+            // Check if we have a constraint that matches the dependency, so we can combine AT configs.
             // It's a tad paranoid, but is better than risking having multiple dependency substitutions for the same module.
             {
                 for (var itor = dependencyConstraints.iterator(); itor.hasNext(); ) {
@@ -117,14 +121,13 @@ abstract class AccessTransformersExtensionImpl implements AccessTransformersExte
                         continue;
 
                     itor.remove();
-                    var constraintConfigs = AccessTransformersConfigurationInternal.get(constraint);
-                    for (var config : constraintConfigs) {
-                        attributes.add(this.register(constraint, config));
+                    for (var config : AccessTransformersConfigurationInternal.get(constraint)) {
+                        configs.put(config, constraint);
                     }
                 }
             }
 
-            this.applyToDependency(configuration, dependency, moduleSelector, attributes);
+            this.applyToDependency(configuration, dependency, moduleSelector, this.register(configs));
         }
 
         dependencyConstraints.stream().collect(Collectors.groupingBy(ModuleVersionSelector::getModule)).forEach((module, allConstraints) -> {
@@ -156,16 +159,15 @@ abstract class AccessTransformersExtensionImpl implements AccessTransformersExte
                 if ("unspecified".equals(version))
                     version = null;
 
-                var attributes = constraints
-                    .stream()
-                    .flatMap(constraint -> AccessTransformersConfigurationInternal
-                        .get(constraint)
-                        .stream()
-                        .map(config -> this.register(constraint, config)))
-                    .toList();
+                var configs = new LinkedHashMap<AccessTransformersConfigurationInternal, Object>();
+                for (var constraint : constraints) {
+                    for (var config : AccessTransformersConfigurationInternal.get(constraint)) {
+                        configs.put(config, constraint);
+                    }
+                }
 
                 var moduleSelector = module + (version != null ? ":" + version : "");
-                this.applyToConstraint(configuration, module, moduleSelector, attributes);
+                this.applyToConstraint(configuration, module, moduleSelector, this.register(configs));
             });
         });
     }
@@ -230,62 +232,119 @@ abstract class AccessTransformersExtensionImpl implements AccessTransformersExte
         });
     }
 
-    private Attribute<Boolean> register(Object dependency, AccessTransformersConfigurationInternal config) {
-        ArtifactAccessTransformer.validateConfig(this.problems, this.getProviders(), dependency, config.getConfig());
-
-        int index = getIndex();
-        var attribute = Attribute.of("net.minecraftforge.accesstransformers.automatic." + index, Boolean.class);
-        this.project.dependencies(Closures.<DependencyHandler>consumer(this, dependencies -> {
-            dependencies.attributesSchema(attributesSchema -> attributesSchema.attribute(attribute));
-
-            dependencies.getArtifactTypes().named(
-                ArtifactTypeDefinition.JAR_TYPE,
-                type -> type.getAttributes().attribute(attribute, false)
-            );
-
-            dependencies.registerTransform(ArtifactAccessTransformer.class, spec -> {
-                spec.parameters(parameters -> {
-                    parameters.getConfig().set(config.getConfig());
-                    parameters.getLogLevel().set(config.options().getLogLevel());
-                    parameters.getClasspath().setFrom(config.options().getClasspath());
-                    parameters.getMainClass().set(config.options().getMainClass());
-                    parameters.getJavaLauncher().set(config.options().getJavaLauncher().map(Util.LAUNCHER_EXECUTABLE));
-                    parameters.getArgs().set(config.options().getArgs().map(Util::listToString));
-
-                    parameters.getCachesDir().convention(this.plugin.localCaches());
-                });
-
-                setAttributes(spec.getFrom(), attribute, false);
-                setAttributes(spec.getTo(), attribute, true);
+    /// Registers the transforms for every config targeting one module or project, merging the configs that share
+    /// options into a single transform so the artifact is only rewritten once for all of them. Configurations
+    /// resolving the same configs with the same options share one transform.
+    ///
+    /// @param configs The configs, mapped to the dependency or constraint each was declared on
+    /// @return The attributes requesting the transformed variant
+    private List<Attribute<Boolean>> register(Map<AccessTransformersConfigurationInternal, Object> configs) {
+        // The files themselves are validated lazily, by the transform
+        configs.forEach((config, dependency) -> ArtifactAccessTransformer.requireConfig(this.problems, dependency, config.getConfig()));
+
+        // Configs only differ in how the tool is run when they come from different containers
+        var groups = configs
+            .keySet()
+            .stream()
+            .collect(Collectors.groupingBy(AccessTransformersConfigurationInternal::options, LinkedHashMap::new, Collectors.toList()));
+
+        var attributes = new ArrayList<Attribute<Boolean>>(groups.size());
+        groups.forEach((options, group) -> attributes.add(this.register(options, group)));
+        return attributes;
+    }
+
+    private Attribute<Boolean> register(AccessTransformersContainerInternal.Options options, List<AccessTransformersConfigurationInternal> configs) {
+        // Rules merge the same regardless of config order
+        var files = configs
+            .stream()
+            .map(config -> config.getConfig().get().getAsFile().getAbsoluteFile())
+            .sorted()
+            .distinct()
+            .toList();
+        // Every configuration resolving the same configs reuses the transform
+        return this.plugin.getRegistry().get().register(this.projectPath, files, options, optionsIndex -> this.register(options, configs, files, optionsIndex));
+    }
+
+    private Attribute<Boolean> register(AccessTransformersContainerInternal.Options options, List<AccessTransformersConfigurationInternal> configs, List<File> files, int optionsIndex) {
+        var attribute = Attribute.of(attributeName(files, optionsIndex), Boolean.class);
+
+        var config = configs.get(0);
+        this.dependencies.attributesSchema(attributesSchema -> attributesSchema.attribute(attribute));
+
+        this.dependencies.getArtifactTypes().named(
+            ArtifactTypeDefinition.JAR_TYPE,
+            type -> type.getAttributes().attribute(attribute, false)
+        );
+
+        Action<ArtifactAccessTransformer.Parameters> parameters = p -> {
+            p.getConfig().set(config.getConfig());
+            for (var additional : configs.subList(1, configs.size())) {
+                p.getAdditionalConfigs().from(additional.getConfig());
+            }
+            p.getLogLevel().set(options.getLogLevel());
+            p.getClasspath().setFrom(options.getClasspath());
+            p.getMainClass().set(options.getMainClass());
+            p.getJavaLauncher().set(options.getJavaLauncher().map(Util.LAUNCHER_EXECUTABLE));
+            p.getArgs().set(options.getArgs().map(Util::listToString));
+            p.getInProcess().convention(true);
+
+            p.getCachesDir().convention(this.plugin.localCaches());
+            p.getStoreDir().convention(this.plugin.globalCaches().dir(Constants.STORE_DIR));
+            p.getStoreMaxSize().convention(Constants.STORE_MAX_SIZE);
+            p.getWorkers().convention(this.plugin.getWorkers());
+            p.getMetrics().convention(this.plugin.getMetrics());
+            p.getRegistry().convention(this.plugin.getRegistry());
+        };
+
+        this.dependencies.registerTransform(ArtifactAccessTransformer.class, spec -> {
+            spec.parameters(parameters);
+
+            setAttributes(spec.getFrom(), ArtifactTypeDefinition.JAR_TYPE, attribute, false);
+            setAttributes(spec.getTo(), ArtifactTypeDefinition.JAR_TYPE, attribute, true);
+        });
+
+        // Project dependencies on the compile classpath are consumed as classes directories, transform those
+        // incrementally instead of their whole jars
+        if (options.getTransformClassesDirectories().getOrElse(false)) {
+            // Without a default, untransformed directories would match any requested value
+            this.dependencies.getArtifactTypes().maybeCreate(ArtifactTypeDefinition.JVM_CLASS_DIRECTORY).getAttributes().attribute(attribute, false);
+
+            this.dependencies.registerTransform(ClassesAccessTransformer.class, spec -> {
+                spec.parameters(parameters);
+
+                setAttributes(spec.getFrom(), ArtifactTypeDefinition.JVM_CLASS_DIRECTORY, attribute, false);
+                setAttributes(spec.getTo(), ArtifactTypeDefinition.JVM_CLASS_DIRECTORY, attribute, true);
             });
-        }));
+        }
 
         return attribute;
     }
 
-    private void setAttributes(AttributeContainer attributes, Attribute<Boolean> attribute, boolean value) {
-        attributes.attribute(ArtifactTypeDefinition.ARTIFACT_TYPE_ATTRIBUTE, ArtifactTypeDefinition.JAR_TYPE)
+    private void setAttributes(AttributeContainer attributes, String artifactType, Attribute<Boolean> attribute, boolean value) {
+        attributes.attribute(ArtifactTypeDefinition.ARTIFACT_TYPE_ATTRIBUTE, artifactType)
                   .attribute(Category.CATEGORY_ATTRIBUTE, this.getObjects().named(Category.class, Category.LIBRARY))
                   .attribute(attribute, value);
     }
 
-    private int getIndex() {
-        var gradle = this.project.getGradle();
-        var ext = gradle.getExtensions().getExtraProperties();
-        int index = ext.has(INDEX_EXT_PROPERTY) ?
-            (int) Objects.requireNonNull(ext.get(INDEX_EXT_PROPERTY), "Index ext property should never be null!") + 1
-            : 0;
-        gradle.getExtensions().getExtraProperties().set(INDEX_EXT_PROPERTY, index);
-        return index;
+    /// Names the attribute of a registration after its configs, so the same configs get the same attribute in every
+    /// build, instead of whatever number a build-wide counter happened to be at.
+    ///
+    /// @param optionsIndex Only differs from 0 if the project runs the same configs with different options
+    private static String attributeName(List<File> configs, int optionsIndex) {
+        var digest = FileHashIndex.sha1();
+        for (var file : configs)
+            digest.update((file.getPath() + '\n').getBytes(StandardCharsets.UTF_8));
+        digest.update(Integer.toString(optionsIndex).getBytes(StandardCharsets.UTF_8));
+        return "net.minecraftforge.accesstransformers.automatic." + HexFormat.of().formatHex(digest.digest(), 0, 8);
     }
 
     @Override
     public AccessTransformersContainer register(Action<? super AccessTransformersContainer.Options> options) {
-        return this.container = AccessTransformersContainerInternal.register(this.project, options);
+        return this.container = AccessTransformersContainerInternal.register(this.getObjects(), this.plugin, this.javaLauncher, options);
     }
 
     private AccessTransformersContainer getContainer() {
-        return this.container == null ? this.container = AccessTransformersContainerInternal.register(this.project, it -> { }) : this.container;
+        return this.container == null ? this.container = AccessTransformersContainerInternal.register(this.getObjects(), this.plugin, this.javaLauncher, it -> { }) : this.container;
     }
 
     @Override
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformers.gradle;
+
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.LogLevel;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+
+/// Collects what every AccessTransformers transform in the build did and how long it took, shared by every project in
+/// the build.
+///
+/// Once the build finishes, a summary is logged and every transform is written to the
+/// [report file][Parameters#getReportFile()], so the dependencies and configs that dominate sync time can be found.
+public abstract class AccessTransformersMetrics implements BuildService<AccessTransformersMetrics.Parameters>, AutoCloseable {
+    static final String NAME = "accessTransformersMetrics";
+
+    private static final Logger LOGGER = Logging.getLogger(AccessTransformersMetrics.class);
+    private static final Pattern STAT = Pattern.compile("\"(\\w+)\":(\\d+)");
+    private static final int SLOWEST = 5;
+
+    /// The parameters for the metrics service.
+    public interface Parameters extends BuildServiceParameters {
+        /// The JSON file to write the report of every transform to.
+        ///
+        /// @return A property for the report file
+        RegularFileProperty getReportFile();
+    }
+
+    /// How a transform produced its output.
+    enum Outcome {
+        /// No config targets a class in the artifact, so it was used as-is
+        UNTARGETED,
+        /// The transformed artifact was found in the store
+        STORED,
+        /// The store recorded that transforming the artifact changes nothing
+        STORED_UNCHANGED,
+        /// The artifact was transformed
+        TRANSFORMED,
+        /// The artifact was transformed, but nothing changed
+        UNCHANGED,
+        /// The classes directory was transformed incrementally
+        CLASSES
+    }
+
+    /// The metrics of a single transform, filled in as it runs.
+    static final class Transform {
+        private final String artifact;
+        private List<String> configs = List.of();
+        private final long start = System.nanoTime();
+        private @Nullable Outcome outcome;
+        private @Nullable String mode;
+        private long totalMillis;
+        private long fingerprintMillis;
+        private long toolMillis;
+        private long parseMillis = -1;
+        private long classesScanned = -1;
+        private long classesChanged = -1;
+        private long bytesWritten = -1;
+
+        Transform(File artifact) {
+            this.artifact = artifact.getName();
+        }
+
+        void configs(List<File> configs) {
+            this.configs = configs.stream().map(File::getName).toList();
+        }
+
+        void outcome(Outcome outcome) {
+            this.outcome = outcome;
+        }
+
+        void fingerprintNanos(long nanos) {
+            this.fingerprintMillis = nanos / 1_000_000;
+        }
+
+        /// @param mode  How the tool was run, `in-process`, `worker` or `fork`
+        /// @param stats The tool's stats file, which may not exist if the tool doesn't support it
+        void tool(String mode, long nanos, File stats) {
+            this.mode = mode;
+            this.toolMillis = nanos / 1_000_000;
+            if (!stats.exists())
+                return;
+
+            try {
+                var matcher = STAT.matcher(Files.readString(stats.toPath()));
+                while (matcher.find()) {
+                    long value = Long.parseLong(matcher.group(2));
+                    switch (matcher.group(1)) {
+                        case "parseMillis" -> this.parseMillis = value;
+                        case "classesScanned" -> this.classesScanned = value;
+                        case "classesChanged" -> this.classesChanged = value;
+                        case "bytesWritten" -> this.bytesWritten = value;
+                        default -> { }
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                LOGGER.debug("Failed to read AccessTransformers stats {}", stats, e);
+            }
+        }
+
+        /// Fills in what the tool's stats would have, if it didn't write them.
+        ///
+        /// @param classes        The number of classes in the output, or `-1` if unknown
+        /// @param changedClasses The number of those that were changed, or `-1` if unknown
+        /// @param bytesWritten   The size of the output
+        void output(int classes, int changedClasses, long bytesWritten) {
+            if (this.classesScanned < 0)
+                this.classesScanned = classes;
+            if (this.classesChanged < 0)
+                this.classesChanged = changedClasses;
+            if (this.bytesWritten < 0)
+                this.bytesWritten = bytesWritten;
+        }
+
+        private void finish() {
+            this.totalMillis = (System.nanoTime() - this.start) / 1_000_000;
+        }
+
+        private void toJson(StringBuilder out) {
+            out.append("    {\"artifact\": ");
+            string(out, this.artifact);
+            out.append(", \"configs\": [");
+            for (int i = 0; i < this.configs.size(); i++) {
+                if (i > 0)
+                    out.append(", ");
+                string(out, this.configs.get(i));
+            }
+            out.append("], \"outcome\": ");
+            string(out, this.outcome == null ? "FAILED" : this.outcome.name());
+            if (this.mode != null) {
+                out.append(", \"mode\": ");
+                string(out, this.mode);
+            }
+            out.append(", \"totalMillis\": ").append(this.totalMillis)
+               .append(", \"fingerprintMillis\": ").append(this.fingerprintMillis)
+               .append(", \"toolMillis\": ").append(this.toolMillis);
+            // Only known when the tool writes stats, or the output was compared to the input
+            if (this.parseMillis >= 0)
+                out.append(", \"parseMillis\": ").append(this.parseMillis);
+            if (this.classesScanned >= 0)
+                out.append(", \"classesScanned\": ").append(this.classesScanned);
+            if (this.classesChanged >= 0)
+                out.append(", \"classesChanged\": ").append(this.classesChanged);
+            if (this.bytesWritten >= 0)
+                out.append(", \"bytesWritten\": ").append(this.bytesWritten);
+            out.append('}');
+        }
+
+        private static void string(StringBuilder out, String value) {
+            out.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\')
+                    out.append('\\').append(c);
+                else if (c < 0x20)
+                    out.append("\\u%04x".formatted((int) c));
+                else
+                    out.append(c);
+            }
+            out.append('"');
+        }
+    }
+
+    private final Queue<Transform> transforms = new ConcurrentLinkedQueue<>();
+
+    /// The default constructor that is invoked by Gradle to instantiate this build service.
+    public AccessTransformersMetrics() { }
+
+    /// Records a finished transform.
+    ///
+    /// @param transform The transform
+    void record(Transform transform) {
+        transform.finish();
+        this.transforms.add(transform);
+    }
+
+    @Override
+    public void close() {
+        if (this.transforms.isEmpty())
+            return;
+
+        var sorted = new ArrayList<>(this.transforms);
+        sorted.sort(Comparator.comparingLong((Transform t) -> t.totalMillis).reversed());
+
+        var counts = new int[Outcome.values().length];
+        long totalMillis = 0;
+        for (var transform : sorted) {
+            if (transform.outcome != null)
+                counts[transform.outcome.ordinal()]++;
+            totalMillis += transform.totalMillis;
+        }
+
+        // Only worth the console space when the tool actually ran
+        int ran = counts[Outcome.TRANSFORMED.ordinal()] + counts[Outcome.UNCHANGED.ordinal()] + counts[Outcome.CLASSES.ordinal()];
+        var level = ran > 0 ? LogLevel.LIFECYCLE : LogLevel.INFO;
+        LOGGER.log(level, "AccessTransformers: {} artifacts in {} ms, {} transformed, {} from the store, {} not targeted",
+            sorted.size(), totalMillis, ran, counts[Outcome.STORED.ordinal()] + counts[Outcome.STORED_UNCHANGED.ordinal()], counts[Outcome.UNTARGETED.ordinal()]);
+        for (var transform : sorted.subList(0, Math.min(SLOWEST, sorted.size())))
+            LOGGER.log(level, "  {} ms {} ({})", transform.totalMillis, transform.artifact, transform.outcome == null ? "FAILED" : transform.outcome);
+
+        var reportFile = this.getParameters().getReportFile().getAsFile().getOrNull();
+        if (reportFile == null)
+            return;
+
+        var json = new StringBuilder("{\n  \"transforms\": [\n");
+        for (int i = 0; i < sorted.size(); i++) {
+            if (i > 0)
+                json.append(",\n");
+            sorted.get(i).toJson(json);
+        }
+        json.append("\n  ]\n}\n");
+
+        try {
+            Files.createDirectories(reportFile.toPath().getParent());
+            Files.writeString(reportFile.toPath(), json, StandardCharsets.UTF_8);
+            LOGGER.log(level, "AccessTransformers report written to {}", reportFile);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write the AccessTransformers report {}", reportFile, e);
+        }
+    }
+}
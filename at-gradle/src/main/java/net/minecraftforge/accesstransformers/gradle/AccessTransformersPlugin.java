@@ -6,6 +6,7 @@ package net.minecraftforge.accesstransformers.gradle;
 
 import net.minecraftforge.gradleutils.shared.EnhancedPlugin;
 import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
 
 import javax.inject.Inject;
 
@@ -13,6 +14,10 @@ abstract class AccessTransformersPlugin extends EnhancedPlugin<Project> {
     static final String NAME = "accesstransformers";
     static final String DISPLAY_NAME = "AccessTransformers Gradle";
 
+    private Provider<AccessTransformersWorkers> workers;
+    private Provider<AccessTransformersMetrics> metrics;
+    private Provider<AccessTransformersRegistry> registry;
+
     @Inject
     public AccessTransformersPlugin() {
         super(NAME, DISPLAY_NAME);
@@ -20,6 +25,35 @@ abstract class AccessTransformersPlugin extends EnhancedPlugin<Project> {
 
     @Override
     public void setup(Project project) {
+        this.workers = project.getGradle().getSharedServices().registerIfAbsent(AccessTransformersWorkers.NAME, AccessTransformersWorkers.class, spec ->
+            spec.getParameters().getMaxWorkers().convention(project.getGradle().getStartParameter().getMaxWorkerCount())
+        );
+        this.metrics = project.getGradle().getSharedServices().registerIfAbsent(AccessTransformersMetrics.NAME, AccessTransformersMetrics.class, spec ->
+            spec.getParameters().getReportFile().convention(project.getRootProject().getLayout().getBuildDirectory().file("reports/accesstransformers/transforms.json"))
+        );
+        this.registry = project.getGradle().getSharedServices().registerIfAbsent(AccessTransformersRegistry.NAME, AccessTransformersRegistry.class);
         project.getExtensions().create(AccessTransformersExtension.NAME, AccessTransformersExtensionImpl.class, this, project);
     }
+
+    /// The build-wide pool of AccessTransformers processes, registered by whichever project applied this plugin first.
+    ///
+    /// @return The workers service
+    Provider<AccessTransformersWorkers> getWorkers() {
+        return this.workers;
+    }
+
+    /// The build-wide collector of transform metrics, registered by whichever project applied this plugin first.
+    ///
+    /// @return The metrics service
+    Provider<AccessTransformersMetrics> getMetrics() {
+        return this.metrics;
+    }
+
+    /// The build-wide record of registered transforms and validated configs, registered by whichever project applied
+    /// this plugin first.
+    ///
+    /// @return The registry service
+    Provider<AccessTransformersRegistry> getRegistry() {
+        return this.registry;
+    }
 }
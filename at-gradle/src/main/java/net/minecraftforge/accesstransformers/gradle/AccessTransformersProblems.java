@@ -15,6 +15,7 @@ import javax.inject.Inject;
 import java.io.File;
 import java.io.Serial;
 import java.nio.file.Path;
+import java.util.Collection;
 
 abstract class AccessTransformersProblems extends EnhancedProblems {
     private static final @Serial long serialVersionUID = -5334414678185075096L;
@@ -117,24 +118,6 @@ abstract class AccessTransformersProblems extends EnhancedProblems {
             .solution(HELP_MESSAGE));
     }
 
-    // TODO [AccessTransformers] Add validation support to AccessTransformers.
-    void reportAccessTransformerOutputIdentical(File inJar, File atFile, File outJar, File logFile) {
-        this.getLogger().warn("WARNING: Access transformer completed, but the output bytes are the same as the input. Output jar: {}", outJar.getAbsolutePath());
-        this.report("access-transformer-output-identical", "Access transformer output identical to input", spec -> spec
-            .details("""
-                The access transformer completed the transformation, but the output bytes are the same as the input.
-                This could potentially be caused by an empty or invalid access transformer configuration.
-                Input Jar: %s
-                AccessTransformer Config: %s
-                Output Jar: %s
-                Execution Log: %s"""
-                .formatted(inJar, atFile, outJar, logFile))
-            .severity(Severity.WARNING)
-            .fileLocation(atFile.getAbsolutePath())
-            .solution("Check your access transformer configuration file and ensure the correct members are stated.")
-            .solution(HELP_MESSAGE));
-    }
-
     RuntimeException accessTransformerFailed(RuntimeException e, File inJar, File atFile, File logFile) {
         return this.throwing(e, "access-transformer-failed", "Access transformer failed", spec -> spec
             .details("""
@@ -151,6 +134,20 @@ abstract class AccessTransformersProblems extends EnhancedProblems {
         );
     }
 
+    RuntimeException classesDirectoriesUnsupported(File inDir, Collection<File> classpath) {
+        return this.throwing(new IllegalStateException("AccessTransformers " + classpath + " cannot transform directories"), "classes-directories-unsupported", "AccessTransformers cannot transform classes directories", spec -> spec
+            .details("""
+                Transforming classes directories is enabled, but the AccessTransformers in use is too old to transform directories.
+                Input Directory: %s
+                AccessTransformers Classpath: %s"""
+                .formatted(inDir, classpath))
+            .severity(Severity.ERROR)
+            .solution("Use a newer version of AccessTransformers, which supports the `--inDir` option.")
+            .solution("Disable `transformClassesDirectories` to transform the jars of project dependencies instead.")
+            .solution(HELP_MESSAGE)
+        );
+    }
+
     void reportDependencyWithoutVersion(InvalidUserDataException e, Dependency dependency) {
         this.report("dependency-constraint-without-version", "Cannot apply Access Transformers on an unrealized dependency", spec -> spec
             .details("""
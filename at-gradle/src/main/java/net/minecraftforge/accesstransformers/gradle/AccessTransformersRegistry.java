@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformers.gradle;
+
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/// What the build has already set up and checked for AccessTransformers, shared by every project in the build.
+///
+/// This keeps the transforms each project has registered and the configs that passed validation, so neither is done
+/// again for every configuration or artifact using them, along with the [file hash indexes][FileHashIndex] and
+/// [transformed jar stores][TransformedJarStore] used during the build, which are saved and trimmed when it finishes. It only lives as long as the build, so nothing is kept around
+/// in the daemon for builds that no longer exist.
+public abstract class AccessTransformersRegistry implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+    static final String NAME = "accessTransformersRegistry";
+
+    private record Registration(String project, List<File> configs, AccessTransformersContainerInternal.Options options) { }
+
+    private final Map<Registration, Attribute<Boolean>> registrations = new ConcurrentHashMap<>();
+    private final Map<String, Map<AccessTransformersContainerInternal.Options, Integer>> optionsIndices = new ConcurrentHashMap<>();
+    /// Configs that passed validation, by absolute path, with the size and modification time they had at the time
+    private final Map<String, List<Long>> validated = new ConcurrentHashMap<>();
+    private final Map<Path, FileHashIndex> hashIndexes = new ConcurrentHashMap<>();
+    private final Map<Path, TransformedJarStore> stores = new ConcurrentHashMap<>();
+
+    /// The default constructor that is invoked by Gradle to instantiate this build service.
+    public AccessTransformersRegistry() { }
+
+    /// Gets the attribute requesting a project's transform of the given configs, registering the transform first if
+    /// the project hasn't yet.
+    ///
+    /// @param project  The path of the project
+    /// @param configs  The configs, sorted
+    /// @param options  The options the configs are applied with
+    /// @param register Registers the transform, given the index of the options among the ones the project has used
+    /// @return The attribute requesting the transformed variant
+    Attribute<Boolean> register(String project, List<File> configs, AccessTransformersContainerInternal.Options options, IntFunction<Attribute<Boolean>> register) {
+        // A project is only ever configured by one thread at a time, so only the maps themselves need to be thread-safe
+        var registration = new Registration(project, configs, options);
+        var existing = this.registrations.get(registration);
+        if (existing != null)
+            return existing;
+
+        var indices = this.optionsIndices.computeIfAbsent(project, p -> new ConcurrentHashMap<>());
+        int index = indices.computeIfAbsent(options, o -> indices.size());
+        var attribute = register.apply(index);
+        this.registrations.put(registration, attribute);
+        return attribute;
+    }
+
+    /// @return If the config was already validated, and hasn't changed since
+    boolean isValidated(File config) {
+        return fingerprint(config).equals(this.validated.get(config.getAbsolutePath()));
+    }
+
+    /// Records that the config passed validation, as it is now.
+    void validated(File config) {
+        this.validated.put(config.getAbsolutePath(), fingerprint(config));
+    }
+
+    private static List<Long> fingerprint(File config) {
+        return List.of(config.length(), config.lastModified());
+    }
+
+    /// Gets the file hash index persisted in the given file, loading it if this build hasn't yet.
+    ///
+    /// @param file The index file
+    /// @return The index
+    FileHashIndex hashIndex(File file) {
+        return this.hashIndexes.computeIfAbsent(file.toPath().toAbsolutePath(), path -> new FileHashIndex(path.toFile()));
+    }
+
+    /// Gets the transformed jar store in the given directory, opening it if this build hasn't yet. Every transform
+    /// uses the same size cap, so the first one to open the store sets it.
+    ///
+    /// @param root    The root directory of the store
+    /// @param maxSize The size cap of the store, in bytes
+    /// @return The store
+    TransformedJarStore store(File root, long maxSize) {
+        return this.stores.computeIfAbsent(root.toPath().toAbsolutePath(), path -> new TransformedJarStore(path.toFile(), maxSize, this.hashIndex(TransformedJarStore.hashIndex(path.toFile()))));
+    }
+
+    @Override
+    public void close() {
+        this.stores.values().forEach(TransformedJarStore::close);
+        this.hashIndexes.values().forEach(FileHashIndex::save);
+    }
+}
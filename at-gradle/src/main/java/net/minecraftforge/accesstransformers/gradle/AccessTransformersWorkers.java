@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformers.gradle;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/// A pool of long-lived AccessTransformers processes, shared by every project in the build.
+///
+/// This is used by [ArtifactAccessTransformer] when AccessTransformers can't be run inside the Gradle daemon, so
+/// that each artifact doesn't need to start its own JVM. The processes run in server mode, reading jobs from
+/// standard input, and keep recently used configs parsed between jobs. Processes are only reused for the same Java
+/// launcher, classpath and main class, and no more than [Parameters#getMaxWorkers()] jobs run at once across the
+/// whole build.
+public abstract class AccessTransformersWorkers implements BuildService<AccessTransformersWorkers.Parameters>, AutoCloseable {
+    static final String NAME = "accessTransformersWorkers";
+
+    private static final Logger LOGGER = Logging.getLogger(AccessTransformersWorkers.class);
+    private static final String READY = "READY 1";
+
+    /// The parameters for the workers service.
+    public interface Parameters extends BuildServiceParameters {
+        /// The maximum number of AccessTransformers jobs to run at once.
+        ///
+        /// @return A property for the maximum number of jobs
+        Property<Integer> getMaxWorkers();
+    }
+
+    private record Key(String javaLauncher, List<File> classpath, String mainClass) { }
+
+    private final Semaphore permits;
+    private final Map<Key, Queue<Worker>> idle = new ConcurrentHashMap<>();
+    private final Set<Key> unsupported = ConcurrentHashMap.newKeySet();
+    private final Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+
+    /// The default constructor that is invoked by Gradle to instantiate this build service.
+    public AccessTransformersWorkers() {
+        this.permits = new Semaphore(Math.max(1, this.getParameters().getMaxWorkers().get()));
+    }
+
+    /// Runs AccessTransformers with the given arguments on an idle worker, starting a new one if needed.
+    ///
+    /// @return `false` if the tool doesn't support server mode, in which case nothing was run
+    boolean run(String javaLauncher, Collection<File> classpath, String mainClass, List<String> args) throws IOException, InterruptedException {
+        var key = new Key(javaLauncher, List.copyOf(classpath), mainClass);
+        if (this.unsupported.contains(key))
+            return false;
+
+        this.permits.acquire();
+        try {
+            var pool = this.idle.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>());
+            var worker = pool.poll();
+            if (worker == null) {
+                worker = Worker.start(key);
+                if (worker == null) {
+                    this.unsupported.add(key);
+                    return false;
+                }
+                this.workers.add(worker);
+            }
+
+            String reply;
+            try {
+                reply = worker.submit(args);
+            } catch (IOException e) {
+                // The process is gone, don't hand it out again
+                this.workers.remove(worker);
+                worker.close();
+                throw e;
+            }
+            pool.offer(worker);
+
+            if (!"OK".equals(reply))
+                throw new IllegalStateException("AccessTransformers failed: " + reply);
+            return true;
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        Worker worker;
+        while ((worker = this.workers.poll()) != null)
+            worker.close();
+    }
+
+    private static final class Worker implements AutoCloseable {
+        private final Process process;
+        private final BufferedWriter in;
+        private final BufferedReader out;
+
+        private Worker(Process process) {
+            this.process = process;
+            this.in = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            this.out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+
+            // Inheriting would write to the daemon's own stderr, which no build sees, so log it like a forked JVM's
+            var errors = new Thread(() -> {
+                try (var err = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = err.readLine()) != null)
+                        LOGGER.info(line);
+                } catch (IOException e) {
+                    LOGGER.debug("Failed to read AccessTransformers worker output", e);
+                }
+            }, "AccessTransformers worker stderr");
+            errors.setDaemon(true);
+            errors.start();
+        }
+
+        /// @return The started worker, or `null` if the tool doesn't support server mode
+        private static Worker start(Key key) throws IOException {
+            var command = new ArrayList<String>();
+            command.add(key.javaLauncher());
+            command.add("-cp");
+            command.add(String.join(File.pathSeparator, key.classpath().stream().map(File::getAbsolutePath).toList()));
+            command.add(key.mainClass());
+            command.add("--server");
+
+            var worker = new Worker(new ProcessBuilder(command).start());
+            var ready = worker.out.readLine();
+            if (!READY.equals(ready)) {
+                LOGGER.info("AccessTransformers {} does not support server mode, falling back to a separate JVM per artifact", key.classpath());
+                worker.close();
+                return null;
+            }
+            return worker;
+        }
+
+        private String submit(List<String> args) throws IOException {
+            this.in.write(String.join("\0", args));
+            this.in.newLine();
+            this.in.flush();
+
+            var reply = this.out.readLine();
+            if (reply == null)
+                throw new IOException("AccessTransformers worker exited unexpectedly");
+            return reply;
+        }
+
+        @Override
+        public void close() {
+            try {
+                // Closing standard input asks the server to exit
+                this.in.close();
+                if (!this.process.waitFor(10, TimeUnit.SECONDS))
+                    this.process.destroyForcibly();
+            } catch (IOException e) {
+                this.process.destroyForcibly();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.process.destroyForcibly();
+            }
+        }
+    }
+}
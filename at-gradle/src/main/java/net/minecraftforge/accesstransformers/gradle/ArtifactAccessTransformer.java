@@ -4,10 +4,10 @@
  */
 package net.minecraftforge.accesstransformers.gradle;
 
-import net.minecraftforge.util.hash.HashStore;
 import org.gradle.api.Action;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.transform.CacheableTransform;
 import org.gradle.api.artifacts.transform.InputArtifact;
 import org.gradle.api.artifacts.transform.TransformAction;
 import org.gradle.api.artifacts.transform.TransformOutputs;
@@ -28,20 +28,28 @@ import org.gradle.api.provider.ProviderFactory;
 import org.gradle.api.tasks.Classpath;
 import org.gradle.api.tasks.Console;
 import org.gradle.api.tasks.Input;
-import org.gradle.api.tasks.InputDirectory;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.process.ExecOperations;
 import org.gradle.process.ProcessExecutionException;
+import org.jetbrains.annotations.Nullable;
 
 import javax.inject.Inject;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -50,6 +58,11 @@ import java.util.stream.Collectors;
 ///
 /// This can be applied to any artifact as long as it is a
 /// [jar][org.gradle.api.artifacts.type.ArtifactTypeDefinition#JAR_TYPE] file.
+///
+/// Transformed artifacts can be shared through the build cache. Only the contents of the configs and artifact, the
+/// AccessTransformers classpath, main class and argument template are part of the cache key, so the result is the
+/// same no matter where the project, Gradle user home or Java launcher live.
+@CacheableTransform
 public abstract class ArtifactAccessTransformer implements TransformAction<ArtifactAccessTransformer.Parameters> {
     private static final Logger LOGGER = Logging.getLogger(ArtifactAccessTransformer.class);
 
@@ -68,7 +81,15 @@ public abstract class ArtifactAccessTransformer implements TransformAction<Artif
         /// in the mod jar's `META-INF` directory.
         ///
         /// @return A property for the AccessTransformer configuration
-        @InputFile RegularFileProperty getConfig();
+        @InputFile @PathSensitive(PathSensitivity.NONE) RegularFileProperty getConfig();
+
+        /// Further AccessTransformer configurations to apply along with [#getConfig()].
+        ///
+        /// All configurations are merged and applied in a single pass over the artifact, the same as passing several
+        /// configurations to AccessTransformers at once.
+        ///
+        /// @return The additional AccessTransformer configurations
+        @InputFiles @PathSensitive(PathSensitivity.NONE) ConfigurableFileCollection getAdditionalConfigs();
 
         /// The log level to pipe the output of AccessTransformers to.
         ///
@@ -92,8 +113,11 @@ public abstract class ArtifactAccessTransformer implements TransformAction<Artif
         /// [org.gradle.jvm.toolchain.JavaLauncher#getExecutablePath()] -> [org.gradle.api.file.RegularFile#getAsFile()]
         /// -> [File#getAbsolutePath()].
         ///
+        /// The launcher is not part of the cache key, as the path differs between machines while AccessTransformers
+        /// produces the same output on any Java version it supports.
+        ///
         /// @return A property for the path of the Java launcher
-        @Input Property<String> getJavaLauncher();
+        @Internal Property<String> getJavaLauncher();
 
         /// The arguments to pass into AccessTransformers.
         ///
@@ -104,16 +128,70 @@ public abstract class ArtifactAccessTransformer implements TransformAction<Artif
         /// - `outJar` - The output jar
         /// - `logFile` - The log file
         ///
+        /// These are part of the cache key before the tokens are replaced, so they should not hold any other absolute
+        /// paths if transformed artifacts are to be shared between machines.
+        ///
         /// @return A property for the arguments
         @Input ListProperty<String> getArgs();
 
+        /// Whether AccessTransformers should run inside the Gradle daemon rather than in a new JVM for every
+        /// artifact.
+        ///
+        /// This only applies when the [main class][#getMainClass()] exposes a `public static void run(String...)`
+        /// method, as newer versions of AccessTransformers' own main class do. Otherwise, or if this is disabled,
+        /// AccessTransformers is run with the [Java launcher][#getJavaLauncher()] instead. As the daemon is shared
+        /// with the rest of the build, in-process runs are given a small memory budget and thread count unless the
+        /// [arguments][#getArgs()] set `--maxInflightBytes` or `--threads` themselves.
+        ///
+        /// @return A property for whether to run in-process
+        @Internal Property<Boolean> getInProcess();
+
+        /// The pool of long-lived AccessTransformers processes to run on, when not running
+        /// [in-process][#getInProcess()].
+        ///
+        /// This only applies when the [main class][#getMainClass()] supports server mode, as newer versions of
+        /// AccessTransformers do. Otherwise, or if this is unset, a new JVM is started for every artifact.
+        ///
+        /// @return A property for the workers service
+        @Internal Property<AccessTransformersWorkers> getWorkers();
+
+        /// The collector of the build's transform metrics, which reports where the time went once the build finishes.
+        ///
+        /// If this is unset, no metrics are collected.
+        ///
+        /// @return A property for the metrics service
+        @Internal Property<AccessTransformersMetrics> getMetrics();
+
+        /// The build's record of configs that passed validation, so a config used by many artifacts is only read once
+        /// per build.
+        ///
+        /// If this is unset, configs are validated for every artifact.
+        ///
+        /// @return A property for the registry service
+        @Internal Property<AccessTransformersRegistry> getRegistry();
+
         /// The caches directory to use.
         ///
-        /// This will include non-[transform output][TransformOutputs] files, such as in-house caching for the
-        /// transformation process.
+        /// This will include non-[transform output][TransformOutputs] files, such as the logs and rule slices of the
+        /// transformation process. The transformed jars themselves are kept in the [store][#getStoreDir()]. Nothing in
+        /// it affects the output, so it is not part of the cache key.
         ///
         /// @return A property for the caches directory
-        @InputDirectory DirectoryProperty getCachesDir();
+        @Internal DirectoryProperty getCachesDir();
+
+        /// The directory of the store of transformed jars, shared by every project and build on the machine.
+        ///
+        /// Transformed jars are stored by the contents of the input jar, the rules applied to it and the
+        /// AccessTransformers tool, so a jar is only transformed once no matter where it is used.
+        ///
+        /// @return A property for the store directory
+        @Internal DirectoryProperty getStoreDir();
+
+        /// The size in bytes the [store of transformed jars][#getStoreDir()] may grow to, before the least recently
+        /// used jars are deleted.
+        ///
+        /// @return A property for the maximum store size
+        @Internal Property<Long> getStoreMaxSize();
 
         /// Returns an action that sets the default values for the parameters of the artifact access transformer.
         ///
@@ -143,7 +221,13 @@ public abstract class ArtifactAccessTransformer implements TransformAction<Artif
                 parameters.getMainClass().value(Tools.ACCESSTRANSFORMERS.getMainClass());
                 parameters.getJavaLauncher().value(Util.launcherFor(project, Tools.ACCESSTRANSFORMERS.getJavaVersion()).map(Util.LAUNCHER_EXECUTABLE));
                 parameters.getArgs().value(Constants.ACCESSTRANSFORMERS_DEFAULT_ARGS);
+                parameters.getInProcess().convention(true);
+                parameters.getWorkers().convention(plugin.getWorkers());
+                parameters.getMetrics().convention(plugin.getMetrics());
+                parameters.getRegistry().convention(plugin.getRegistry());
                 parameters.getCachesDir().value(plugin.localCaches());
+                parameters.getStoreDir().value(plugin.globalCaches().dir(Constants.STORE_DIR));
+                parameters.getStoreMaxSize().value(Constants.STORE_MAX_SIZE);
                 action.execute(parameters);
             };
         }
@@ -172,8 +256,10 @@ public abstract class ArtifactAccessTransformer implements TransformAction<Artif
 
     /// The artifact to transform with AccessTransformers.
     ///
+    /// Only its name and contents are part of the cache key, its name because the output is named after it.
+    ///
     /// @return A property for the input artifact
-    protected abstract @InputArtifact Provider<FileSystemLocation> getInputArtifact();
+    protected abstract @InputArtifact @PathSensitive(PathSensitivity.NAME_ONLY) Provider<FileSystemLocation> getInputArtifact();
 
     /// Runs the transform action on the input artifact, queuing it for transformation with AccessTransformers.
     ///
@@ -183,24 +269,35 @@ public abstract class ArtifactAccessTransformer implements TransformAction<Artif
     /// - If the [AccessTransformers configuration][Parameters#getConfig()] is unspecified or does not exist, this
     /// transformation is skipped entirely.
     ///   - Gradle detects changes to this file, so if it is changed, this transform action will be invoked by Gradle.
+    /// - Any [additional configurations][Parameters#getAdditionalConfigs()] are merged into it, so every config
+    /// targeting the artifact is applied in one pass.
     /// - This transformer uses in-house caching to detect if the input artifact actually needs to be transformed in the
     /// first place.
     ///   - If caches are hit and an existing output is found, the transformation process is skipped entirely.
     ///   - Due to Gradle using transient caching for its artifact transforms, this is required to avoid unnecessarily
     /// jar transformations, lengthening the build/sync time.
+    /// - Only the rules targeting classes in the input artifact are applied, and the in-house cache is keyed by those
+    /// alone. Editing a rule for another jar does not cause this one to be transformed again.
+    ///   - If no rule targets a class in the input artifact, or the transformation changes nothing, the input artifact
+    /// is used as the output as-is.
     ///
     /// @param outputs The outputs for this transform action
     @Override
     public void transform(TransformOutputs outputs) {
+        var metrics = new AccessTransformersMetrics.Transform(this.getInputArtifact().get().getAsFile());
         try {
-            this.exec(outputs);
+            this.exec(outputs, metrics);
         } catch (Exception e) {
             LOGGER.error("Failed to apply AccessTransformers to {}", this.getInputArtifact().get().getAsFile().getName(), e);
             throw new RuntimeException(e);
+        } finally {
+            var service = this.getParameters().getMetrics().getOrNull();
+            if (service != null)
+                service.record(metrics);
         }
     }
 
-    private void exec(TransformOutputs outputs) throws Exception {
+    private void exec(TransformOutputs outputs, AccessTransformersMetrics.Transform metrics) throws Exception {
         var parameters = this.getParameters();
 
         // inputs
@@ -212,86 +309,239 @@ public abstract class ArtifactAccessTransformer implements TransformAction<Artif
             return;
         }
 
+        var atFiles = new ArrayList<File>();
+        atFiles.add(atFile);
+        atFiles.addAll(parameters.getAdditionalConfigs().getFiles());
+        for (var file : atFiles)
+            validateConfigFile(this.problems, parameters.getRegistry().getOrNull(), inJar.getName(), file, () -> Files.readString(file.toPath()));
+        metrics.configs(atFiles);
+
+        // Most configs only target a few of the jars they are applied to, only reading the central directory is
+        // enough to skip the rest
+        var slice = ConfigTargets.read(atFiles).slice(inJar);
+        if (slice.isEmpty()) {
+            LOGGER.info("Access transformer config targets no classes in {}, skipping transformation", inJar.getName());
+            metrics.outcome(AccessTransformersMetrics.Outcome.UNTARGETED);
+            outputs.file(inJar);
+            return;
+        }
+
         // outputs
         var outJarName = inJar.getName().replace(".jar", "-at.jar");
-        var outJar = this.file(outJarName);
-        var logFile = this.file(outJar.getName() + ".log");
-
-        // caches
-        var cachesDir = parameters.getCachesDir();
-
-        // aforementioned in-house caching
-        var cache = new HashStore(cachesDir.get().getAsFile())
-            .load(cachesDir.file(outJarName + ".cache").get().getAsFile())
-            .add("atFile", atFile)
-            .add("inJar", inJar)
-            .add("outJar", outJar);
-
-        if (outJar.exists() && cache.isSame()) {
+        var logFile = this.file(outJarName + ".log");
+
+        // Only the rules that apply to this jar are used, so editing rules for other jars doesn't invalidate the cache.
+        // Every config is merged into this one file, so the tool runs once however many configs there are.
+        var sliceFile = this.file(outJarName + ".cfg");
+        Files.writeString(sliceFile.toPath(), slice);
+
+        // aforementioned in-house caching, shared by every project and build on this machine
+        var storeDir = parameters.getStoreDir().get().getAsFile();
+        var storeMaxSize = parameters.getStoreMaxSize().get();
+        var registry = parameters.getRegistry().getOrNull();
+        var store = registry != null
+            ? registry.store(storeDir, storeMaxSize)
+            : new TransformedJarStore(storeDir, storeMaxSize, new FileHashIndex(TransformedJarStore.hashIndex(storeDir)));
+        long fingerprintStart = System.nanoTime();
+        var key = store.key(inJar, slice, parameters.getClasspath().getFiles(), parameters.getMainClass().getOrNull(), parameters.getArgs().get());
+        metrics.fingerprintNanos(System.nanoTime() - fingerprintStart);
+
+        var outJar = store.get(key, inJar);
+        if (outJar != null) {
             LOGGER.info("Access transformer output up-to-date, skipping transformation for {}", inJar.getName());
+            metrics.outcome(outJar.equals(inJar) ? AccessTransformersMetrics.Outcome.STORED_UNCHANGED : AccessTransformersMetrics.Outcome.STORED);
         } else {
-            LOGGER.info("Access transformer started. Input jar: {}", inJar.getAbsolutePath());
-            var result = this.getExecOperations().javaexec(exec -> {
-                var logLevel = parameters.getLogLevel().getOrElse(LogLevel.INFO);
-                var stream = Util.toLog(s -> LOGGER.log(logLevel, s));
-                exec.setStandardOutput(stream);
-                exec.setErrorOutput(stream);
-
-                exec.setExecutable(parameters.getJavaLauncher().get());
-                exec.setClasspath(parameters.getClasspath());
-                Util.setOptional(exec.getMainClass(), parameters.getMainClass());
-
-                var substitutions = Map.of(
-                    ARG_INJAR, inJar.getAbsolutePath(),
-                    ARG_ATFILE, atFile.getAbsolutePath(),
-                    ARG_OUTJAR, outJar.getAbsolutePath(),
-                    ARG_LOGFILE, logFile.getAbsolutePath()
-                );
-                exec.setArgs(parameters
-                    .getArgs().get()
-                    .stream()
-                    .map(arg -> replace(arg, substitutions))
-                    .collect(Collectors.toList())
-                );
-            });
-
-            try {
-                result.rethrowFailure().assertNormalExitValue();
-            } catch (ProcessExecutionException e) {
-                throw this.problems.accessTransformerFailed(e, inJar, atFile, logFile);
-            }
-
-            // TODO [AccessTransformers] If no changes were made, do not create a "modified" output jar
-            /*
+            var tmpJar = store.temporary(key);
             try {
-                if (Arrays.equals(ResourceGroovyMethods.getBytes(inJar), ResourceGroovyMethods.getBytes(outJar))) {
-                    this.problems.reportAccessTransformerOutputIdentical(inJar, atFile, outJar, logFile);
+                LOGGER.info("Access transformer started. Input jar: {}", inJar.getAbsolutePath());
+                var args = args(parameters, inJar.getAbsolutePath(), sliceFile.getAbsolutePath(), tmpJar.toAbsolutePath().toString(), logFile.getAbsolutePath());
+
+                run(parameters, this.getExecOperations(), this.problems, inJar, atFile, logFile, args, metrics, this.file(outJarName + ".stats.json"));
+
+                var changes = this.compare(inJar, atFile, tmpJar.toFile(), logFile);
+                metrics.output(changes.classes(), changes.changedClasses(), Files.size(tmpJar));
+                if (changes.identical()) {
+                    // Expected whenever the slice only holds inner class rules, which may or may not apply
+                    LOGGER.info("Access transformer completed, but no class was changed. Using input jar: {}", inJar.getAbsolutePath());
+                    store.putUnchanged(key, tmpJar);
+                    outJar = inJar;
+                    metrics.outcome(AccessTransformersMetrics.Outcome.UNCHANGED);
                 } else {
+                    outJar = store.put(key, tmpJar);
+                    metrics.outcome(AccessTransformersMetrics.Outcome.TRANSFORMED);
                     LOGGER.info("Access transformer completed. Output jar: {}", outJar.getAbsolutePath());
                 }
-            } catch (IOException e) {
-                this.problems.reportAccessTransformerCannotValidateOutput(e, inJar, atFile, outJar, logFile);
+            } finally {
+                Files.deleteIfExists(tmpJar);
             }
-             */
-            LOGGER.info("Access transformer completed. Output jar: {}", outJar.getAbsolutePath());
+        }
+
+        // The registry closes its stores once the build finishes, without one it has to be closed right away
+        if (registry == null)
+            store.close();
 
-            cache.add("outJar", outJar).save();
+        // If nothing changed, hand Gradle the input rather than storing a copy of it
+        if (outJar.equals(inJar)) {
+            outputs.file(inJar);
+            return;
         }
 
         // transform output
         var output = outputs.file(outJarName).toPath();
 
         try {
-            Files.copy(
-                outJar.toPath(),
-                output,
-                StandardCopyOption.REPLACE_EXISTING
-            );
+            link(outJar.toPath(), output);
         } catch (IOException e) {
             throw this.problems.accessTransformerCannotWriteOutput(e, output);
         }
     }
 
+    /// Hard-links the stored jar into the transform output, so resolving doesn't copy the whole jar every time. Stored
+    /// jars are never modified in place, only replaced or deleted, which leaves the link intact.
+    ///
+    /// Falls back to copying if the filesystem doesn't support hard links, or the store is on a different one.
+    private static void link(Path stored, Path output) throws IOException {
+        Files.deleteIfExists(output);
+        try {
+            Files.createLink(output, stored);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            LOGGER.debug("Cannot hard-link {} to {}, copying instead: {}", stored, output, e.toString());
+            Files.copy(stored, output, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /// Compares the output jar to the input, ignoring the fingerprint AccessTransformers adds.
+    ///
+    /// @return How the jars differ, treated as different with unknown class counts if they could not be compared
+    private ConfigTargets.Changes compare(File inJar, File atFile, File outJar, File logFile) {
+        try {
+            return ConfigTargets.compare(inJar, outJar, Constants.ACCESSTRANSFORMERS_FINGERPRINT);
+        } catch (IOException e) {
+            this.problems.reportAccessTransformerCannotValidateOutput(e, inJar, atFile, outJar, logFile);
+            return new ConfigTargets.Changes(false, -1, -1);
+        }
+    }
+
+    /// Runs AccessTransformers with the given arguments, inside the Gradle daemon, on one of the build's long-lived
+    /// processes or in a new JVM, whichever is first available.
+    ///
+    /// Versions of AccessTransformers that can run in-process or on workers also write stats, which are read into
+    /// the given metrics. Older versions don't know the option, so it is only passed to a new JVM if the tool is
+    /// [one of those versions][#isModernTool(Parameters)].
+    ///
+    /// @param input     The artifact being transformed, for reporting
+    /// @param statsFile The file for AccessTransformers to write its stats to
+    static void run(Parameters parameters, ExecOperations execOperations, AccessTransformersProblems problems, File input, File atFile, File logFile, List<String> args, AccessTransformersMetrics.Transform metrics, File statsFile) {
+        try {
+            Files.deleteIfExists(statsFile.toPath());
+        } catch (IOException e) {
+            LOGGER.debug("Failed to delete stale stats {}", statsFile, e);
+        }
+        var argsWithStats = new ArrayList<>(args);
+        argsWithStats.add("--statsFile");
+        argsWithStats.add(statsFile.getAbsolutePath());
+
+        long start = System.nanoTime();
+        if (execInProcess(parameters, problems, input, atFile, logFile, argsWithStats)) {
+            metrics.tool("in-process", System.nanoTime() - start, statsFile);
+            return;
+        }
+        if (execOnWorker(parameters, problems, input, atFile, logFile, argsWithStats)) {
+            metrics.tool("worker", System.nanoTime() - start, statsFile);
+            return;
+        }
+
+        var forkArgs = isModernTool(parameters) ? argsWithStats : args;
+        var result = execOperations.javaexec(exec -> {
+            var logLevel = parameters.getLogLevel().getOrElse(LogLevel.INFO);
+            var stream = Util.toLog(s -> LOGGER.log(logLevel, s));
+            exec.setStandardOutput(stream);
+            exec.setErrorOutput(stream);
+
+            exec.setExecutable(parameters.getJavaLauncher().get());
+            exec.setClasspath(parameters.getClasspath());
+            Util.setOptional(exec.getMainClass(), parameters.getMainClass());
+            exec.setArgs(forkArgs);
+        });
+
+        try {
+            result.rethrowFailure().assertNormalExitValue();
+        } catch (ProcessExecutionException e) {
+            throw problems.accessTransformerFailed(e, input, atFile, logFile);
+        }
+        metrics.tool("fork", System.nanoTime() - start, statsFile);
+    }
+
+    /// Fills in the tokens of the [argument template][Parameters#getArgs()].
+    static List<String> args(Parameters parameters, String inJar, String atFile, String outJar, String logFile) {
+        var substitutions = Map.of(
+            ARG_INJAR, inJar,
+            ARG_ATFILE, atFile,
+            ARG_OUTJAR, outJar,
+            ARG_LOGFILE, logFile
+        );
+        return parameters
+            .getArgs().get()
+            .stream()
+            .map(arg -> replace(arg, substitutions))
+            .collect(Collectors.toList());
+    }
+
+    /// Checks if the tool is a version of AccessTransformers that can be run in-process. The same versions can also
+    /// transform directories and write stats, which older ones, such as the default version, can't.
+    ///
+    /// This only loads the tool's classes, it doesn't run it, and works whether or not running in-process is
+    /// [enabled][Parameters#getInProcess()].
+    static boolean isModernTool(Parameters parameters) {
+        return InProcessExecutor.isSupported(parameters.getClasspath().getFiles(), mainClass(parameters));
+    }
+
+    /// Runs AccessTransformers inside the Gradle daemon, if [enabled][Parameters#getInProcess()] and supported by the
+    /// tool.
+    ///
+    /// @return `false` if AccessTransformers must be run in a separate JVM instead
+    private static boolean execInProcess(Parameters parameters, AccessTransformersProblems problems, File inJar, File atFile, File logFile, List<String> args) {
+        if (!parameters.getInProcess().getOrElse(false))
+            return false;
+
+        // The tool sizes itself to the whole JVM by default, but the daemon's heap and cores are shared with the rest
+        // of the build and with every other transform running alongside this one
+        var capped = new ArrayList<>(args);
+        if (!args.contains("--maxInflightBytes") && !args.contains("--max-inflight-bytes"))
+            capped.addAll(List.of("--maxInflightBytes", String.valueOf(Constants.IN_PROCESS_MAX_INFLIGHT_BYTES)));
+        if (!args.contains("--threads"))
+            capped.addAll(List.of("--threads", String.valueOf(Constants.IN_PROCESS_THREADS)));
+
+        try {
+            return InProcessExecutor.run(parameters.getClasspath().getFiles(), mainClass(parameters), capped);
+        } catch (Throwable e) {
+            throw problems.accessTransformerFailed(new RuntimeException(e), inJar, atFile, logFile);
+        }
+    }
+
+    /// The [main class][Parameters#getMainClass()] to run in-process or on workers, which don't have a jar manifest
+    /// to fall back to. When unset, AccessTransformers' own main class is tried, and if the tool doesn't have it the
+    /// caller falls back to a new JVM.
+    private static String mainClass(Parameters parameters) {
+        return parameters.getMainClass().getOrElse(Tools.ACCESSTRANSFORMERS.getMainClass());
+    }
+
+    /// Runs AccessTransformers on one of the build's [long-lived processes][Parameters#getWorkers()], if its main
+    /// class supports server mode.
+    ///
+    /// @return `false` if AccessTransformers must be run in a new JVM instead
+    private static boolean execOnWorker(Parameters parameters, AccessTransformersProblems problems, File inJar, File atFile, File logFile, List<String> args) {
+        var workers = parameters.getWorkers().getOrNull();
+        if (workers == null)
+            return false;
+
+        try {
+            return workers.run(parameters.getJavaLauncher().get(), parameters.getClasspath().getFiles(), mainClass(parameters), args);
+        } catch (Exception e) {
+            throw problems.accessTransformerFailed(new RuntimeException(e), inJar, atFile, logFile);
+        }
+    }
+
     /// Validates the given AccessTransformer configuration file to ensure it is ready for use by the artifact
     /// transformer.
     ///
@@ -300,7 +550,8 @@ public abstract class ArtifactAccessTransformer implements TransformAction<Artif
     /// @param config     The AccessTransformer configuration file
     /// @throws RuntimeException If validation of the configuration file failed
     public static void validateConfig(Project project, Object dependency, RegularFileProperty config) {
-        validateConfig(project.getObjects(), project.getProviders(), dependency, config);
+        var plugin = project.getPlugins().findPlugin(AccessTransformersPlugin.class);
+        validateConfig(project.getObjects().newInstance(AccessTransformersProblems.class), plugin == null ? null : plugin.getRegistry().get(), project.getProviders(), dependency, config);
     }
 
     /// Validates the given AccessTransformer configuration file to ensure it is ready for use by the artifact
@@ -312,35 +563,60 @@ public abstract class ArtifactAccessTransformer implements TransformAction<Artif
     /// @param config     The AccessTransformer configuration file
     /// @throws RuntimeException If validation of the configuration file failed
     public static void validateConfig(ObjectFactory objects, ProviderFactory providers, Object dependency, RegularFileProperty config) {
-        validateConfig(objects.newInstance(AccessTransformersProblems.class), providers, dependency, config);
+        validateConfig(objects.newInstance(AccessTransformersProblems.class), null, providers, dependency, config);
     }
 
-    static void validateConfig(AccessTransformersProblems problems, ProviderFactory providers, Object dependency, RegularFileProperty atFileProperty) {
-        var dependencyToString = dependency instanceof Dependency d ? Util.toString(d) : dependency.toString();
+    static void validateConfig(AccessTransformersProblems problems, @Nullable AccessTransformersRegistry registry, ProviderFactory providers, Object dependency, RegularFileProperty atFileProperty) {
+        var atFileSource = requireConfig(problems, dependency, atFileProperty);
+        validateConfigFile(problems, registry, toString(dependency), atFileSource.getAsFile(), () -> providers.fileContents(atFileSource).getAsText().get());
+    }
 
-        // check that consumer has defined the config
-        RegularFile atFileSource;
+    /// Checks that the consumer has defined the config, without touching the file itself.
+    ///
+    /// This is all that is checked while configuring. Reading the file then would make it an input of the
+    /// configuration cache, so editing the config would throw the whole cache entry away, when only the transforms
+    /// using it need to run again. The file is [validated][#validateConfigFile] when transforming instead.
+    ///
+    /// @return The config
+    static RegularFile requireConfig(AccessTransformersProblems problems, Object dependency, RegularFileProperty atFileProperty) {
         try {
-            atFileSource = atFileProperty.get();
+            return atFileProperty.get();
         } catch (IllegalStateException e) {
-            throw problems.accessTransformerConfigNotDefined(new RuntimeException("Failed to resolve config file property", e), dependencyToString);
+            throw problems.accessTransformerConfigNotDefined(new RuntimeException("Failed to resolve config file property", e), toString(dependency));
         }
+    }
 
+    /// Checks that the config exists, can be read and isn't blank.
+    ///
+    /// @param registry   The build's record of validated configs, if any, to skip configs that were already validated
+    /// @param dependency The dependency to be transformed, for reporting
+    /// @param contents   Reads the contents of the config
+    static void validateConfigFile(AccessTransformersProblems problems, @Nullable AccessTransformersRegistry registry, String dependency, File atFile, Callable<String> contents) {
         // check that the file exists
-        var atFile = atFileSource.getAsFile();
         var atFilePath = atFile.getPath();
         if (!atFile.exists())
-            throw problems.accessTransformerConfigMissing(new RuntimeException(new FileNotFoundException("Config file does not exist at " + atFilePath)), dependencyToString, atFilePath);
+            throw problems.accessTransformerConfigMissing(new RuntimeException(new FileNotFoundException("Config file does not exist at " + atFilePath)), dependency, atFilePath);
+
+        // Every artifact, configuration and project using this config validates it, only read it again if it has changed
+        if (registry != null && registry.isValidated(atFile))
+            return;
 
         // check that the file can be read and isn't empty
         String atFileContents;
         try {
-            atFileContents = providers.fileContents(atFileSource).getAsText().get();
+            atFileContents = contents.call();
         } catch (Throwable e) {
-            throw problems.accessTransformerConfigUnreadable(new RuntimeException(new IOException("Failed to read config file at " + atFilePath, e)), dependencyToString, atFilePath);
+            throw problems.accessTransformerConfigUnreadable(new RuntimeException(new IOException("Failed to read config file at " + atFilePath, e)), dependency, atFilePath);
         }
         if (atFileContents.isBlank())
-            throw problems.accessTransformerConfigEmpty(new IllegalStateException("Config file must not be blank at " + atFilePath), dependencyToString, atFilePath);
+            throw problems.accessTransformerConfigEmpty(new IllegalStateException("Config file must not be blank at " + atFilePath), dependency, atFilePath);
+
+        if (registry != null)
+            registry.validated(atFile);
+    }
+
+    private static String toString(Object dependency) {
+        return dependency instanceof Dependency d ? Util.toString(d) : dependency.toString();
     }
 
     /// Uses [String#replace(CharSequence, CharSequence)] but with pre-compiled patterns provided in the given map.
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformers.gradle;
+
+import org.gradle.api.artifacts.transform.CacheableTransform;
+import org.gradle.api.artifacts.transform.InputArtifact;
+import org.gradle.api.artifacts.transform.TransformAction;
+import org.gradle.api.artifacts.transform.TransformOutputs;
+import org.gradle.api.file.FileSystemLocation;
+import org.gradle.api.file.FileType;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.process.ExecOperations;
+import org.gradle.work.ChangeType;
+import org.gradle.work.InputChanges;
+import org.jetbrains.annotations.Nullable;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/// Transforms the classes directories of project dependencies using AccessTransformers.
+///
+/// This is used instead of [ArtifactAccessTransformer] when a project dependency is consumed as a
+/// [classes directory][org.gradle.api.artifacts.type.ArtifactTypeDefinition#JVM_CLASS_DIRECTORY], so editing the
+/// producing project doesn't mean transforming all of its classes again. The transform is incremental: class files
+/// deleted from the producer are deleted from the output, and AccessTransformers itself only patches the class files
+/// that were changed since the last run.
+///
+/// This shares the [parameters][ArtifactAccessTransformer.Parameters] of [ArtifactAccessTransformer]. The
+/// [arguments][ArtifactAccessTransformer.Parameters#getArgs()] are filled in with the directories instead of the jars,
+/// and `--inJar` and `--outJar` are passed as `--inDir` and `--outDir`. This requires a version of AccessTransformers
+/// that can transform directories, older versions fail the transform rather than leaving the classes untransformed.
+@CacheableTransform
+public abstract class ClassesAccessTransformer implements TransformAction<ArtifactAccessTransformer.Parameters> {
+    private static final Logger LOGGER = Logging.getLogger(ClassesAccessTransformer.class);
+
+    private final AccessTransformersProblems problems;
+
+    /// The object factory provided by Gradle services.
+    ///
+    /// @return The object factory
+    protected abstract @Inject ObjectFactory getObjects();
+
+    /// The exec operations provided by Gradle services.
+    ///
+    /// @return The exec operations
+    protected abstract @Inject ExecOperations getExecOperations();
+
+    /// The changes to the input artifact since the last time this transform ran.
+    ///
+    /// @return The input changes
+    protected abstract @Inject InputChanges getInputChanges();
+
+    /// The default constructor that is invoked by Gradle to instantiate this transform action.
+    public ClassesAccessTransformer() {
+        this.problems = this.getObjects().newInstance(AccessTransformersProblems.class);
+    }
+
+    /// The classes directory to transform with AccessTransformers.
+    ///
+    /// @return A property for the input artifact
+    protected abstract @InputArtifact @PathSensitive(PathSensitivity.RELATIVE) Provider<FileSystemLocation> getInputArtifact();
+
+    /// Runs the transform action on the input classes directory.
+    ///
+    /// @param outputs The outputs for this transform action
+    @Override
+    public void transform(TransformOutputs outputs) {
+        var metrics = new AccessTransformersMetrics.Transform(this.getInputArtifact().get().getAsFile());
+        try {
+            this.exec(outputs, metrics);
+        } catch (Exception e) {
+            LOGGER.error("Failed to apply AccessTransformers to {}", this.getInputArtifact().get().getAsFile(), e);
+            throw new RuntimeException(e);
+        } finally {
+            var service = this.getParameters().getMetrics().getOrNull();
+            if (service != null)
+                service.record(metrics);
+        }
+    }
+
+    private void exec(TransformOutputs outputs, AccessTransformersMetrics.Transform metrics) throws IOException {
+        var parameters = this.getParameters();
+
+        // inputs
+        var inDir = this.getInputArtifact().get().getAsFile();
+        var atFile = parameters.getConfig().getAsFile().getOrNull();
+        if (atFile == null) {
+            // No config so just return the input directory
+            outputs.dir(inDir);
+            return;
+        }
+
+        var atFiles = new ArrayList<File>();
+        atFiles.add(atFile);
+        atFiles.addAll(parameters.getAdditionalConfigs().getFiles());
+        for (var file : atFiles)
+            ArtifactAccessTransformer.validateConfigFile(this.problems, parameters.getRegistry().getOrNull(), inDir.getName(), file, () -> Files.readString(file.toPath()));
+        metrics.configs(atFiles);
+
+        if (!ArtifactAccessTransformer.isModernTool(parameters))
+            throw this.problems.classesDirectoriesUnsupported(inDir, parameters.getClasspath().getFiles());
+
+        // outputs
+        var outDir = outputs.dir(inDir.getName()).toPath();
+        var inputChanges = this.getInputChanges();
+        if (!inputChanges.isIncremental()) {
+            delete(outDir);
+        } else {
+            // AccessTransformers skips unchanged files on its own, but doesn't know which ones are gone
+            for (var change : inputChanges.getFileChanges(this.getInputArtifact())) {
+                if (change.getChangeType() == ChangeType.REMOVED && change.getFileType() == FileType.FILE)
+                    Files.deleteIfExists(outDir.resolve(change.getNormalizedPath()));
+            }
+        }
+        Files.createDirectories(outDir);
+
+        // The argument template only has one config, so merge them like the artifact transform does. The tool merges
+        // the rules of several configs the same as if they were one.
+        var config = new StringBuilder();
+        for (var file : atFiles)
+            config.append(Files.readString(file.toPath())).append('\n');
+
+        // Classes directories of different projects share names, and one directory may be transformed with different
+        // rules by different consumers, so the files are named after both
+        var name = "classes-" + transformHash(inDir, config, parameters.getMainClass().getOrNull(), parameters.getArgs().get());
+        var logFile = this.file(name + ".log");
+        var configFile = this.file(name + ".cfg");
+        Files.writeString(configFile.toPath(), config);
+
+        var args = new ArrayList<String>();
+        for (var arg : ArtifactAccessTransformer.args(parameters, inDir.getAbsolutePath(), configFile.getAbsolutePath(), outDir.toAbsolutePath().toString(), logFile.getAbsolutePath())) {
+            args.add(switch (arg) {
+                case "--inJar" -> "--inDir";
+                case "--outJar" -> "--outDir";
+                default -> arg;
+            });
+        }
+        // Kept out of the output, so Gradle doesn't treat it as part of the transformed classes
+        args.addAll(List.of("--indexFile", this.file(name + ".index").getAbsolutePath()));
+
+        LOGGER.info("Access transformer started. Input directory: {}, incremental: {}", inDir.getAbsolutePath(), inputChanges.isIncremental());
+        ArtifactAccessTransformer.run(parameters, this.getExecOperations(), this.problems, inDir, atFile, logFile, args, metrics, this.file(name + ".stats.json"));
+        metrics.outcome(AccessTransformersMetrics.Outcome.CLASSES);
+        LOGGER.info("Access transformer completed. Output directory: {}", outDir.toAbsolutePath());
+    }
+
+    private File file(String path) {
+        return this.getParameters().getCachesDir().file(path).map(this.problems.ensureFileLocation()).get().getAsFile();
+    }
+
+    private static String transformHash(File dir, CharSequence config, @Nullable String mainClass, List<String> args) {
+        var digest = FileHashIndex.sha1();
+        digest.update(dir.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(config.toString().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(String.valueOf(mainClass).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(String.join("\0", args).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest(), 0, 8);
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir))
+            return;
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (var file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformers.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/// The classes targeted by an AccessTransformers config, and the jar scans built on them.
+///
+/// This only reads as much of the config as needed to find the target class of each rule, and doesn't validate it.
+/// That is left to AccessTransformers itself, which is the only thing that ever applies the rules.
+final class ConfigTargets {
+    private static final String VERSIONS = "META-INF/versions/";
+    private static final String PACKAGE_SUFFIX = "/**";
+
+    /// Rule lines by the internal name of the class they target
+    private final Map<String, List<String>> rules;
+    /// Rule lines changing the access of an inner class itself or of a package, which may apply to any jar
+    private final List<String> everyJar;
+
+    private ConfigTargets(Map<String, List<String>> rules, List<String> everyJar) {
+        this.rules = rules;
+        this.everyJar = everyJar;
+    }
+
+    /// Reads the target classes of the given configs, merged as if they were one.
+    ///
+    /// AccessTransformers merges rules for the same target the same way whether they come from one config or
+    /// several, so a [slice][#slice(File)] of the merged configs applies exactly as the configs would separately.
+    ///
+    /// @param configs The AccessTransformers configs
+    /// @return The targets
+    /// @throws IOException If a config could not be read
+    static ConfigTargets read(Collection<File> configs) throws IOException {
+        var rules = new HashMap<String, List<String>>();
+        var everyJar = new ArrayList<String>();
+        for (var config : configs) {
+            for (var line : Files.readAllLines(config.toPath())) {
+                int comment = line.indexOf('#');
+                if (comment >= 0)
+                    line = line.substring(0, comment);
+
+                var tokens = line.trim().split("\\s+");
+                if (tokens.length < 2)
+                    continue;
+
+                var name = tokens[1].replace('.', '/');
+                var rule = String.join(" ", tokens);
+                if (tokens.length == 2 && (name.endsWith(PACKAGE_SUFFIX) || name.indexOf('$') >= 0))
+                    everyJar.add(rule);
+                else
+                    rules.computeIfAbsent(name, k -> new ArrayList<>()).add(rule);
+            }
+        }
+        return new ConfigTargets(rules, everyJar);
+    }
+
+    /// Slices out the rules that may change the given jar, by reading only its central directory.
+    ///
+    /// These are the rules targeting a class in the jar, plus every rule changing the access of an inner class itself
+    /// or of a package.
+    /// AccessTransformers also updates the InnerClasses attribute of every class that refers to a targeted inner
+    /// class, including the nested classes of a targeted package, and a jar doesn't need to contain the inner class
+    /// to refer to it. Rules for the fields and methods of an inner class only change the inner class, so they are
+    /// sliced like any other.
+    ///
+    /// The slice is normalized, without comments and sorted, so it only changes when a rule relevant to the jar does.
+    ///
+    /// @param jar The jar to slice the rules for
+    /// @return The rules that apply to the jar, one per line, empty if transforming it certainly won't change any class
+    /// @throws IOException If the jar could not be read
+    String slice(File jar) throws IOException {
+        var slice = new TreeSet<String>(this.everyJar);
+
+        try (var zip = new ZipFile(jar)) {
+            for (var entries = zip.entries(); entries.hasMoreElements(); ) {
+                var name = className(entries.nextElement());
+                if (name == null)
+                    continue;
+
+                var lines = this.rules.get(name);
+                if (lines != null)
+                    slice.addAll(lines);
+            }
+        }
+
+        var ret = new StringBuilder();
+        for (var line : slice)
+            ret.append(line).append('\n');
+        return ret.toString();
+    }
+
+    /// How a transformed jar differs from its input.
+    ///
+    /// @param identical      If both hold the same entries with the same contents
+    /// @param classes        The number of classes in the transformed jar
+    /// @param changedClasses The number of those that differ from the input
+    record Changes(boolean identical, int classes, int changedClasses) { }
+
+    /// Compares a transformed jar to its input, by comparing the sizes and CRCs in their central directories.
+    ///
+    /// @param in      The input jar
+    /// @param out     The transformed jar
+    /// @param ignored An entry name to ignore in both, such as a marker only written to one of them
+    /// @return How the jars differ
+    /// @throws IOException If either jar could not be read
+    static Changes compare(File in, File out, String ignored) throws IOException {
+        try (var zipIn = new ZipFile(in); var zipOut = new ZipFile(out)) {
+            var entriesIn = entries(zipIn, ignored);
+            var entriesOut = entries(zipOut, ignored);
+            int classes = 0, changed = 0;
+            for (var entry : entriesOut.entrySet()) {
+                if (!entry.getKey().endsWith(".class"))
+                    continue;
+                classes++;
+                if (!entry.getValue().equals(entriesIn.get(entry.getKey())))
+                    changed++;
+            }
+            return new Changes(entriesIn.equals(entriesOut), classes, changed);
+        }
+    }
+
+    private static Map<String, List<Long>> entries(ZipFile zip, String ignored) {
+        var entries = new HashMap<String, List<Long>>();
+        for (var entry : Collections.list(zip.entries())) {
+            if (!Objects.equals(ignored, entry.getName()))
+                entries.put(entry.getName(), List.of(entry.getSize(), entry.getCrc()));
+        }
+        return entries;
+    }
+
+    private static String className(ZipEntry entry) {
+        var name = entry.getName();
+        if (entry.isDirectory() || !name.endsWith(".class"))
+            return null;
+
+        // Multi-release classes are transformed like any other
+        if (name.startsWith(VERSIONS)) {
+            int slash = name.indexOf('/', VERSIONS.length());
+            if (slash < 0)
+                return null;
+            name = name.substring(slash + 1);
+        }
+        return name.substring(0, name.length() - ".class".length());
+    }
+}
@@ -14,6 +14,13 @@ final class Constants {
     static final String ACCESSTRANSFORMERS_DOWNLOAD_URL = "https://maven.minecraftforge.net/net/minecraftforge/accesstransformers/" + ACCESSTRANSFORMERS_VERSION + "/accesstransformers-" + ACCESSTRANSFORMERS_VERSION + "-fatjar.jar";
     static final int ACCESSTRANSFORMERS_MIN_JAVA = 8;
     static final String ACCESSTRANSFORMERS_MAIN = "net.minecraftforge.accesstransformer.TransformerProcessor";
+    static final String ACCESSTRANSFORMERS_FINGERPRINT = "META-INF/accesstransformer.fingerprint";
+
+    static final String STORE_DIR = "transformed";
+    static final long STORE_MAX_SIZE = 4L * 1024 * 1024 * 1024;
+
+    static final long IN_PROCESS_MAX_INFLIGHT_BYTES = 64L * 1024 * 1024;
+    static final int IN_PROCESS_THREADS = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors()));
 
     static final List<String> ACCESSTRANSFORMERS_DEFAULT_ARGS = List.of(
         "--inJar", "{inJar}",
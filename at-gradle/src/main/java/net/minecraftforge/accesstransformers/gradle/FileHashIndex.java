@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformers.gradle;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/// Content hashes of files, remembered by their size, modification time and file key so an unchanged file is only
+/// ever read once.
+///
+/// A file is only hashed again if any of those differ from when it was last hashed. The index is persisted as one
+/// line per file, and is kept by the [registry][AccessTransformersRegistry#hashIndex(File)] for the length of a build
+/// so changes are saved once when the build finishes, rather than on every new hash. Concurrent builds may each
+/// rewrite the index, the last one wins and the others' entries are simply hashed again later.
+///
+/// Entries that haven't been looked up for [#MAX_UNUSED_MILLIS] are dropped when saving, so files that are gone
+/// don't stay in the index forever without checking every file on every save.
+final class FileHashIndex {
+    private static final Logger LOGGER = Logging.getLogger(FileHashIndex.class);
+    /// Files modified this recently are hashed but not indexed, as a write within the same timestamp granularity
+    /// could change their contents without changing their fingerprint.
+    private static final long RACY_MILLIS = 2000;
+    private static final long MAX_UNUSED_MILLIS = TimeUnit.DAYS.toMillis(30);
+    /// How stale an entry's last use may get before it is updated, so lookups alone don't save the index every build
+    private static final long USED_GRANULARITY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private record Entry(long size, long modified, String fileKey, String hash, long used) { }
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    /// Loads the index persisted in the given file, if there is one.
+    ///
+    /// @param file The index file
+    FileHashIndex(File file) {
+        this.file = file.toPath().toAbsolutePath();
+        this.load();
+    }
+
+    /// Gets the SHA-1 hash of the contents of the given file, only reading it if it has changed since it was last
+    /// hashed.
+    ///
+    /// @param file The file to hash
+    /// @return The hash, as lowercase hex
+    /// @throws IOException If the file could not be read
+    String sha1(File file) throws IOException {
+        var path = file.toPath().toAbsolutePath();
+        var attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().toMillis();
+        // Not every filesystem has file keys, size and time alone still catch nearly every change
+        var fileKey = String.valueOf(attrs.fileKey());
+
+        var name = path.toString();
+        var entry = this.entries.get(name);
+        long now = System.currentTimeMillis();
+        if (entry != null && entry.size() == size && entry.modified() == modified && entry.fileKey().equals(fileKey)) {
+            if (now - entry.used() >= USED_GRANULARITY_MILLIS) {
+                this.entries.put(name, new Entry(size, modified, fileKey, entry.hash(), now));
+                this.dirty.set(true);
+            }
+            return entry.hash();
+        }
+
+        var hash = hash(path);
+        if (now - modified >= RACY_MILLIS) {
+            this.entries.put(name, new Entry(size, modified, fileKey, hash, now));
+            this.dirty.set(true);
+        }
+        return hash;
+    }
+
+    /// Saves the index, if anything changed since it was loaded or last saved.
+    void save() {
+        if (this.dirty.getAndSet(false))
+            this.write();
+    }
+
+    private void load() {
+        try {
+            for (var line : Files.readAllLines(this.file, StandardCharsets.UTF_8)) {
+                // The path goes last, so it can hold anything but a line break
+                var parts = line.split("\t", 6);
+                if (parts.length != 6)
+                    continue;
+                try {
+                    this.entries.put(parts[5], new Entry(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3], parts[0], Long.parseLong(parts[4])));
+                } catch (NumberFormatException ignored) { }
+            }
+        } catch (NoSuchFileException ignored) {
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read the file hash index {}, files will be hashed again", this.file, e);
+        }
+    }
+
+    private synchronized void write() {
+        var ret = new StringBuilder();
+        long unusedBefore = System.currentTimeMillis() - MAX_UNUSED_MILLIS;
+        this.entries.forEach((name, entry) -> {
+            if (entry.used() < unusedBefore)
+                this.entries.remove(name, entry);
+            else
+                ret.append(entry.hash()).append('\t').append(entry.size()).append('\t').append(entry.modified()).append('\t').append(entry.fileKey()).append('\t').append(entry.used()).append('\t').append(name).append('\n');
+        });
+
+        try {
+            Files.createDirectories(this.file.getParent());
+            var tmp = this.file.resolveSibling(this.file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            Files.writeString(tmp, ret, StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, this.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write the file hash index {}", this.file, e);
+        }
+    }
+
+    private static String hash(Path path) throws IOException {
+        var digest = sha1();
+        try (InputStream in = Files.newInputStream(path)) {
+            var buf = new byte[8192];
+            int read;
+            while ((read = in.read(buf)) != -1)
+                digest.update(buf, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required to be supported by every JVM", e);
+        }
+    }
+}
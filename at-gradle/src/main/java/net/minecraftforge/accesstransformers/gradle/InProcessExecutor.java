@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformers.gradle;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/// Runs AccessTransformers inside the Gradle daemon, instead of forking a new JVM for every artifact.
+///
+/// Gradle does not allow artifact transforms to use the Worker API, so this keeps its own class loaders. Each one
+/// only sees the AccessTransformers classpath and the JDK, and stays alive across transforms so the tool's classes
+/// remain loaded and compiled. The tool keeps its rules in a singleton, so a class loader only ever runs one
+/// transform at a time and parallel transforms each borrow their own.
+///
+/// Class loaders are kept for as long as the classpath's files are unchanged. Once any of them is modified, the
+/// class loaders of the old files are closed and new ones are created. For closed class loaders to be collected, the
+/// tool's log4j is configured to not register JMX beans or a shutdown hook, and is shut down before closing.
+///
+/// This requires the tool to expose a `public static void run(String...)` method on its main class, tools without
+/// one are reported as unsupported so the caller can fall back to forking.
+final class InProcessExecutor {
+    private static final Logger LOGGER = Logging.getLogger(InProcessExecutor.class);
+    private static final MethodType RUN_TYPE = MethodType.methodType(void.class, String[].class);
+    private static final String LOG4J_PROPERTIES = "log4j2.component.properties";
+    // Both the current and the legacy names, as the version of log4j depends on the tool's version
+    private static final byte[] LOG4J_CONFIG = """
+        log4j2.disableJmx=true
+        log4j2.disable.jmx=true
+        log4j2.shutdownHookEnabled=false
+        log4j.shutdownHookEnabled=false
+        """.getBytes(StandardCharsets.UTF_8);
+
+    private static final Map<Key, Pool> POOLS = new ConcurrentHashMap<>();
+
+    private InProcessExecutor() { }
+
+    private record Key(List<File> classpath, String mainClass) { }
+
+    private record Instance(URLClassLoader loader, MethodHandle run) {
+        private void close() {
+            var thread = Thread.currentThread();
+            var previous = thread.getContextClassLoader();
+            try {
+                // Without its shutdown hook, the tool's log4j has to be stopped by hand
+                thread.setContextClassLoader(this.loader);
+                var logManager = Class.forName("org.apache.logging.log4j.LogManager", true, this.loader);
+                MethodHandles.publicLookup().findStatic(logManager, "shutdown", MethodType.methodType(void.class)).invoke();
+            } catch (ClassNotFoundException e) {
+                // The tool doesn't use log4j
+            } catch (Throwable e) {
+                LOGGER.debug("Failed to shut down logging of AccessTransformers class loader", e);
+            } finally {
+                thread.setContextClassLoader(previous);
+            }
+
+            try {
+                this.loader.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close AccessTransformers class loader", e);
+            }
+        }
+    }
+
+    /// A class loader for the tool, adding the [log4j config][#LOG4J_CONFIG] last so it overrides the tool's own.
+    private static final class ToolClassLoader extends URLClassLoader {
+        private final URL log4jConfig;
+
+        private ToolClassLoader(URL[] urls) {
+            // Parent is the platform loader so none of Gradle's own classes, log4j included, leak in
+            super("AccessTransformers", urls, ClassLoader.getPlatformClassLoader());
+            try {
+                this.log4jConfig = new URL(null, "accesstransformers:" + LOG4J_PROPERTIES, new URLStreamHandler() {
+                    @Override
+                    protected URLConnection openConnection(URL url) {
+                        return new URLConnection(url) {
+                            @Override
+                            public void connect() { }
+
+                            @Override
+                            public InputStream getInputStream() {
+                                return new ByteArrayInputStream(LOG4J_CONFIG);
+                            }
+                        };
+                    }
+                });
+            } catch (MalformedURLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public Enumeration<URL> findResources(String name) throws IOException {
+            var resources = super.findResources(name);
+            if (!LOG4J_PROPERTIES.equals(name))
+                return resources;
+
+            var ret = Collections.list(resources);
+            ret.add(this.log4jConfig);
+            return Collections.enumeration(ret);
+        }
+    }
+
+    /// The idle class loaders for one version of the classpath.
+    private static final class Pool {
+        private final List<String> stamps;
+        private final Queue<Instance> idle = new ConcurrentLinkedQueue<>();
+        private volatile boolean unsupported;
+        private volatile boolean closed;
+
+        private Pool(List<String> stamps) {
+            this.stamps = stamps;
+        }
+
+        private void release(Instance instance) {
+            this.idle.offer(instance);
+            // Closed while the instance was borrowed, don't keep it alive
+            if (this.closed)
+                this.close();
+        }
+
+        private void close() {
+            this.closed = true;
+            Instance instance;
+            while ((instance = this.idle.poll()) != null)
+                instance.close();
+        }
+    }
+
+    /// Runs the tool with the given arguments, reusing an idle class loader if there is one.
+    ///
+    /// @param classpath The tool's classpath
+    /// @param mainClass The tool's main class
+    /// @param args      The arguments, the same as would be passed to the main method
+    /// @return `false` if the tool can't be run in-process, in which case nothing was run
+    /// @throws Throwable Anything thrown by the tool
+    static boolean run(Collection<File> classpath, String mainClass, List<String> args) throws Throwable {
+        var key = new Key(List.copyOf(classpath), mainClass);
+        var pool = pool(key);
+        var instance = borrow(key, pool);
+        if (instance == null)
+            return false;
+
+        var thread = Thread.currentThread();
+        var previous = thread.getContextClassLoader();
+        try {
+            // Logging and service lookups in the tool go through the context class loader
+            thread.setContextClassLoader(instance.loader());
+            instance.run().invokeExact(args.toArray(String[]::new));
+        } finally {
+            thread.setContextClassLoader(previous);
+            pool.release(instance);
+        }
+        return true;
+    }
+
+    /// Checks if the tool can be run in-process, without running it. The class loader this loads is kept for the
+    /// next run.
+    ///
+    /// @param classpath The tool's classpath
+    /// @param mainClass The tool's main class
+    /// @return `true` if the main class has a `public static void run(String...)` method
+    static boolean isSupported(Collection<File> classpath, String mainClass) {
+        var key = new Key(List.copyOf(classpath), mainClass);
+        var pool = pool(key);
+        var instance = borrow(key, pool);
+        if (instance == null)
+            return false;
+        pool.release(instance);
+        return true;
+    }
+
+    /// @return The pool for the current version of the classpath's files, closing the one for the old version if they
+    ///         changed
+    private static Pool pool(Key key) {
+        var stamps = stamps(key.classpath());
+        return POOLS.compute(key, (k, existing) -> {
+            if (existing != null && existing.stamps.equals(stamps))
+                return existing;
+            if (existing != null)
+                existing.close();
+            return new Pool(stamps);
+        });
+    }
+
+    /// @return An idle instance from the pool, or a new one, or `null` if the tool can't be run in-process
+    private static @Nullable Instance borrow(Key key, Pool pool) {
+        if (pool.unsupported)
+            return null;
+
+        var instance = pool.idle.poll();
+        if (instance == null) {
+            instance = create(key);
+            if (instance == null)
+                pool.unsupported = true;
+        }
+        return instance;
+    }
+
+    /// @return The size and modification time of every file on the classpath, which changes whenever one is rebuilt
+    private static List<String> stamps(List<File> classpath) {
+        var ret = new ArrayList<String>(classpath.size());
+        for (var file : classpath)
+            ret.add(file.length() + ":" + file.lastModified());
+        return ret;
+    }
+
+    private static @Nullable Instance create(Key key) {
+        var urls = new URL[key.classpath().size()];
+        for (int i = 0; i < urls.length; i++) {
+            try {
+                urls[i] = key.classpath().get(i).toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Invalid classpath entry " + key.classpath().get(i), e);
+            }
+        }
+
+        var loader = new ToolClassLoader(urls);
+        try {
+            var main = Class.forName(key.mainClass(), false, loader);
+            return new Instance(loader, MethodHandles.publicLookup().findStatic(main, "run", RUN_TYPE));
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            LOGGER.info("AccessTransformers {} cannot be run in-process, falling back to a separate JVM: {}", key.classpath(), e.toString());
+            try {
+                loader.close();
+            } catch (IOException ignored) { }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformers.gradle;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/// A content-addressed store of transformed jars, shared by every project and build on the machine.
+///
+/// Entries are keyed by the hash of the input jar, the rules applied to it and the AccessTransformers tool, so the
+/// same jar transformed the same way is only ever transformed once, no matter which project, checkout or Gradle
+/// transform workspace asks for it. Entries are written to a temporary file and atomically moved into place, so
+/// concurrent builds never see a partial jar. Once the store grows beyond its size cap, the least recently used
+/// entries are deleted, as are entries that haven't been used for a while.
+///
+/// Finding those entries means listing the whole store, so it is only done when the store is [closed][#close()] at
+/// the end of a build that stored anything, or during the build once the store's estimated size passes its cap. The
+/// estimate is the size found by the last listing plus everything stored since. A store beyond its cap is trimmed to
+/// [three quarters][#TRIM_RATIO] of it, so a build that keeps storing only lists the store again after storing a
+/// quarter of the cap, rather than on every insert once the store is full.
+///
+/// An entry is either the transformed jar, or a marker recording that transforming the input changed nothing. When
+/// an entry was last used is recorded in a separate file, as stored jars are hard-linked into Gradle's transform
+/// outputs and changing their own modification time would change those outputs too.
+final class TransformedJarStore {
+    private static final Logger LOGGER = Logging.getLogger(TransformedJarStore.class);
+    private static final String JAR = ".jar";
+    private static final String UNCHANGED = ".unchanged";
+    private static final String TMP = ".tmp";
+    private static final String USED = ".used";
+    private static final String INDEX = "files.index";
+    private static final long STALE_TEMPORARY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long MAX_UNUSED_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final double TRIM_RATIO = 0.75;
+
+    private final Path root;
+    private final long maxSize;
+    private final FileHashIndex hashes;
+    /// Bytes stored since the store was last listed
+    private final AtomicLong added = new AtomicLong();
+    /// The size of the store when it was last listed, `0` until it has been
+    private volatile long listedSize;
+    private volatile boolean written;
+
+    /// @param root    The root directory of the store
+    /// @param maxSize The size cap of the store, in bytes
+    /// @param hashes  The file hash index of the store, from [#hashIndex(File)]
+    TransformedJarStore(File root, long maxSize, FileHashIndex hashes) {
+        this.root = root.toPath();
+        this.maxSize = maxSize;
+        this.hashes = hashes;
+    }
+
+    /// @param root The root directory of the store
+    /// @return The file the store's hash index is persisted in
+    static File hashIndex(File root) {
+        return new File(root, INDEX);
+    }
+
+    /// Computes the key of a transformation. The input jar is only read if it has changed since it was last keyed.
+    ///
+    /// @param inJar     The input jar
+    /// @param rules     The rules applied to the input jar
+    /// @param classpath The AccessTransformers classpath
+    /// @param mainClass The AccessTransformers main class
+    /// @param args      The AccessTransformers arguments, before substitution
+    /// @return The key
+    String key(File inJar, String rules, Collection<File> classpath, @Nullable String mainClass, List<String> args) throws IOException {
+        var digest = FileHashIndex.sha1();
+        digest.update(this.hashes.sha1(inJar).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(rules.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        // Tool jars are versioned and never change in place, so their identity is enough
+        for (var file : classpath)
+            digest.update((file.getName() + ':' + file.length() + ':' + file.lastModified() + '\n').getBytes(StandardCharsets.UTF_8));
+        digest.update(String.valueOf(mainClass).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(String.join("\0", args).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /// Looks up a transformation, marking it as recently used.
+    ///
+    /// @param key The key of the transformation
+    /// @return The transformed jar, the input jar if the transformation changed nothing, or `null` if not stored
+    @Nullable File get(String key, File inJar) {
+        File ret;
+        var jar = this.path(key, JAR);
+        if (Files.exists(jar))
+            ret = jar.toFile();
+        else if (Files.exists(this.path(key, UNCHANGED)))
+            ret = inJar;
+        else
+            return null;
+
+        this.used(key);
+        return ret;
+    }
+
+    /// Creates a temporary file for a transformed jar to be written to, to be [stored][#put(String, Path)] once
+    /// complete.
+    ///
+    /// @param key The key of the transformation
+    /// @return The temporary file
+    Path temporary(String key) throws IOException {
+        var tmp = this.path(key, '.' + UUID.randomUUID().toString() + TMP);
+        Files.createDirectories(tmp.getParent());
+        return tmp;
+    }
+
+    /// Stores a transformed jar, moving it from the given temporary file.
+    ///
+    /// @param key The key of the transformation
+    /// @param tmp The transformed jar, from [#temporary(String)]
+    /// @return The stored jar
+    File put(String key, Path tmp) throws IOException {
+        var jar = this.path(key, JAR);
+        move(tmp, jar);
+        this.used(key);
+        this.stored(Files.size(jar));
+        return jar.toFile();
+    }
+
+    /// Records that a transformation changed nothing, deleting the given temporary file.
+    ///
+    /// @param key The key of the transformation
+    /// @param tmp The transformed jar, from [#temporary(String)]
+    void putUnchanged(String key, Path tmp) throws IOException {
+        Files.deleteIfExists(tmp);
+        var marker = this.path(key, UNCHANGED);
+        var markerTmp = this.temporary(key);
+        Files.createFile(markerTmp);
+        move(markerTmp, marker);
+        this.used(key);
+        this.stored(0);
+    }
+
+    /// Evicts entries if anything was stored, and saves the hash index.
+    void close() {
+        if (this.written)
+            this.evict();
+        this.hashes.save();
+    }
+
+    /// Records that an entry was stored, evicting entries if the store may now be beyond its size cap.
+    private void stored(long size) {
+        this.written = true;
+        if (this.listedSize + this.added.addAndGet(size) > this.maxSize)
+            this.evict();
+    }
+
+    private Path path(String key, String suffix) {
+        // Spread entries over subdirectories, some filesystems get slow with many files in one directory
+        return this.root.resolve(key.substring(0, 2)).resolve(key + suffix);
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /// Records that an entry was just used, by the modification time of its [#USED] file.
+    private void used(String key) {
+        var used = this.path(key, USED);
+        try {
+            Files.setLastModifiedTime(used, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            try {
+                Files.createFile(used);
+            } catch (FileAlreadyExistsException ignored) {
+                // Created by another build just now
+            } catch (IOException e1) {
+                LOGGER.debug("Failed to record the use of {} in the transformed jar store", key, e1);
+            }
+        } catch (IOException e) {
+            // Can't record the use, but the entry is still there
+            LOGGER.debug("Failed to record the use of {} in the transformed jar store", key, e);
+        }
+    }
+
+    /// An entry of the store, made of every file sharing its key.
+    private static final class Entry {
+        private final String key;
+        private final List<Path> files = new ArrayList<>();
+        private long size;
+        private long lastUsed;
+        private boolean stored;
+
+        private Entry(String key) {
+            this.key = key;
+        }
+    }
+
+    /// Deletes entries that haven't been used for [#MAX_UNUSED_MILLIS], then the least recently used entries until
+    /// the store is within its size cap, or within [#TRIM_RATIO] of it if the store was beyond it. Other builds may be doing the same, so files that have already disappeared
+    /// are ignored.
+    private synchronized void evict() {
+        // Anything stored from here on may or may not be listed, count it towards the next listing to be safe
+        this.added.set(0);
+        var entries = new HashMap<String, Entry>();
+        var stale = new ArrayList<Path>();
+        long now = System.currentTimeMillis();
+        try (Stream<Path> files = Files.walk(this.root, 2)) {
+            for (var file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                var name = file.getFileName().toString();
+                if (name.endsWith(TMP)) {
+                    if (lastModified(file) < now - STALE_TEMPORARY_MILLIS)
+                        stale.add(file);
+                    continue;
+                }
+
+                boolean used = name.endsWith(USED);
+                if (!used && !name.endsWith(JAR) && !name.endsWith(UNCHANGED))
+                    continue;
+
+                var entry = entries.computeIfAbsent(name.substring(0, name.indexOf('.')), Entry::new);
+                entry.files.add(file);
+                // Entries stored before uses were recorded only have their own modification time
+                entry.lastUsed = Math.max(entry.lastUsed, lastModified(file));
+                if (!used) {
+                    entry.size += size(file);
+                    entry.stored = true;
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.warn("Failed to list the transformed jar store {}", this.root, e);
+            return;
+        }
+
+        // Left behind by builds that were killed mid-transform
+        for (var tmp : stale) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) { }
+        }
+
+        var sorted = new ArrayList<>(entries.values());
+        sorted.sort(Comparator.comparingLong(e -> e.lastUsed));
+        long size = sorted.stream().mapToLong(e -> e.size).sum();
+        long target = size > this.maxSize ? (long) (this.maxSize * TRIM_RATIO) : this.maxSize;
+        for (var entry : sorted) {
+            // Entries without a jar or marker are only the record of a use, left behind when another build evicted it
+            if (entry.stored && size <= target && entry.lastUsed >= now - MAX_UNUSED_MILLIS)
+                continue;
+
+            try {
+                for (var file : entry.files)
+                    Files.deleteIfExists(file);
+                size -= entry.size;
+                if (entry.stored)
+                    LOGGER.info("Evicted {} from the transformed jar store", entry.key);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to evict {} from the transformed jar store", entry.key, e);
+            }
+        }
+        this.listedSize = size;
+    }
+
+    private static long size(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformers.gradle;
+
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/// Measures the plugin against a generated multi-project build, failing if any measurement exceeds its threshold.
+///
+/// The build is made of [#PROJECTS] projects, each depending on [#DEPENDENCIES] of the [#LIBRARIES] synthetic jars in
+/// a flat directory repository, so nothing is downloaded for them. Every project has its own config, most
+/// dependencies are configured individually and some through constraints with a config shared by every project.
+///
+/// The sizes and thresholds can be changed with Gradle properties, such as `-PperfTest.projects=16` or
+/// `-PperfTest.maxFirstSyncMillis=60000`. To avoid downloading AccessTransformers, a local fat jar can be given with
+/// `-PperfTest.tool=path/to/accesstransformers-fatjar.jar`.
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class PluginPerformanceTest {
+    private static final int PROJECTS = Integer.getInteger("perfTest.projects", 8);
+    private static final int LIBRARIES = Integer.getInteger("perfTest.libraries", 60);
+    private static final int DEPENDENCIES = Integer.getInteger("perfTest.dependencies", 30);
+    private static final int CLASSES = Integer.getInteger("perfTest.classes", 200);
+    private static final int RUNS = Integer.getInteger("perfTest.runs", 3);
+    private static final String TOOL = System.getProperty("perfTest.tool");
+
+    private static final long MAX_CONFIGURATION_MILLIS = Long.getLong("perfTest.maxConfigurationMillis", 10_000);
+    private static final long MAX_FIRST_SYNC_MILLIS = Long.getLong("perfTest.maxFirstSyncMillis", 120_000);
+    private static final long MAX_NO_OP_MILLIS = Long.getLong("perfTest.maxNoOpMillis", 10_000);
+    private static final long MAX_EDIT_MILLIS = Long.getLong("perfTest.maxEditMillis", 30_000);
+
+    @TempDir Path dir;
+    private Path build;
+
+    @BeforeAll
+    void generate() throws IOException {
+        this.build = this.dir.resolve("build");
+        var repo = this.build.resolve("repo");
+        Files.createDirectories(repo);
+        for (int lib = 0; lib < LIBRARIES; lib++)
+            writeLibrary(repo.resolve("lib" + lib + "-1.0.jar"), lib);
+
+        var settings = new StringBuilder("""
+            rootProject.name = 'perf'
+
+            dependencyResolutionManagement {
+                repositories {
+                    flatDir { dirs file('repo') }
+                }
+            }
+
+            """);
+        for (int project = 0; project < PROJECTS; project++)
+            settings.append("include 'p").append(project).append("'\n");
+        Files.writeString(this.build.resolve("settings.gradle"), settings);
+        Files.writeString(this.build.resolve("gradle.properties"), "org.gradle.jvmargs=-Xmx2g\n");
+
+        // Shared by every project through constraints, so one config targets many dependencies
+        var shared = new StringBuilder();
+        for (int lib = 0; lib < LIBRARIES; lib += 5)
+            shared.append("public perf.lib").append(lib).append(".Class0\n");
+        Files.writeString(this.build.resolve("shared.cfg"), shared);
+
+        for (int project = 0; project < PROJECTS; project++)
+            this.writeProject(project);
+    }
+
+    private void writeProject(int project) throws IOException {
+        var dir = this.build.resolve("p" + project);
+        Files.createDirectories(dir);
+
+        var libs = libraries(project);
+        var config = new StringBuilder();
+        var dependencies = new StringBuilder();
+        var constraints = new StringBuilder();
+        for (int lib : libs) {
+            if (lib % 5 == 0) {
+                dependencies.append("    implementation 'perf:lib").append(lib).append(":1.0'\n");
+                constraints.append("""
+                            implementation('perf:lib%d') {
+                                accessTransformers.configure(it) { config = rootProject.file('shared.cfg') }
+                            }
+                    """.formatted(lib));
+            } else {
+                dependencies.append("    implementation('perf:lib").append(lib).append(":1.0') { accessTransformers.configure(it) }\n");
+                // Leave some dependencies untargeted, as most real ones are
+                if (lib % 3 != 0) {
+                    for (int cls = project % 4; cls < CLASSES; cls += 16)
+                        config.append("public perf.lib").append(lib).append(".Class").append(cls).append('\n');
+                }
+            }
+        }
+        Files.writeString(dir.resolve("accesstransformer.cfg"), config);
+
+        var options = TOOL == null ? "" : "\n        classpath.setFrom('" + Path.of(TOOL).toAbsolutePath().toString().replace("\\", "\\\\") + "')";
+        Files.writeString(dir.resolve("build.gradle"), """
+            plugins {
+                id 'java'
+                id 'net.minecraftforge.accesstransformers'
+            }
+
+            accessTransformers.options {
+                config = file('accesstransformer.cfg')%s
+            }
+
+            dependencies {
+            %s
+                constraints {
+            %s    }
+            }
+
+            // Resolves the classpath like an IDE sync does, running every transform
+            tasks.register('sync') {
+                inputs.files(configurations.named('compileClasspath'))
+                doLast { }
+            }
+            """.formatted(options, dependencies, constraints));
+    }
+
+    /// A window of the libraries, overlapping with the neighboring projects so some jars are shared.
+    private static int[] libraries(int project) {
+        int start = (project * DEPENDENCIES / 2) % LIBRARIES;
+        return IntStream.range(0, Math.min(DEPENDENCIES, LIBRARIES)).map(i -> (start + i) % LIBRARIES).toArray();
+    }
+
+    @Test
+    @Order(1)
+    void configuration() {
+        // The first run starts the daemon, which isn't what's being measured
+        this.run("help");
+        long millis = this.median("help");
+        this.check("configuration", millis, MAX_CONFIGURATION_MILLIS);
+    }
+
+    @Test
+    @Order(2)
+    void firstSync() {
+        long millis = this.time("sync");
+        this.check("first sync", millis, MAX_FIRST_SYNC_MILLIS);
+    }
+
+    @Test
+    @Order(3)
+    void noOp() {
+        long millis = this.median("sync");
+        this.check("warm no-op sync", millis, MAX_NO_OP_MILLIS);
+    }
+
+    @Test
+    @Order(4)
+    void edit() throws IOException {
+        int lib = libraries(0)[1];
+        Files.writeString(this.build.resolve("p0/accesstransformer.cfg"), "public perf.lib" + lib + ".Class" + (CLASSES - 1) + '\n', StandardOpenOption.APPEND);
+        long millis = this.time("sync");
+        this.check("sync after a one-line config edit", millis, MAX_EDIT_MILLIS);
+    }
+
+    private long median(String... args) {
+        var times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++)
+            times[i] = this.time(args);
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    private long time(String... args) {
+        long start = System.nanoTime();
+        this.run(args);
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private void run(String... args) {
+        var arguments = new ArrayList<>(List.of(args));
+        arguments.add("--no-configuration-cache");
+        arguments.add("--stacktrace");
+        GradleRunner.create()
+            .withProjectDir(this.build.toFile())
+            .withTestKitDir(this.dir.resolve("testkit").toFile())
+            .withPluginClasspath()
+            .withArguments(arguments)
+            .build();
+    }
+
+    private void check(String name, long millis, long max) {
+        System.out.printf("%s: %d ms (threshold %d ms, %d projects, %d libraries)%n", name, millis, max, PROJECTS, LIBRARIES);
+        assertTrue(millis <= max, () -> "%s took %d ms, exceeding the threshold of %d ms".formatted(name, millis, max));
+    }
+
+    /// Writes a jar of package-private classes, so every rule targeting them changes something.
+    private static void writeLibrary(Path jar, int lib) throws IOException {
+        try (var out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            for (int cls = 0; cls < CLASSES; cls++) {
+                var name = "perf/lib" + lib + "/Class" + cls;
+                out.putNextEntry(new ZipEntry(name + ".class"));
+                out.write(classFile(name));
+                out.closeEntry();
+            }
+        }
+    }
+
+    private static byte[] classFile(String name) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);  // minor version
+            out.writeShort(52); // Java 8
+            out.writeShort(5);  // constant pool count, plus one
+            out.writeByte(1);   // #1 Utf8
+            out.writeUTF(name);
+            out.writeByte(7);   // #2 Class #1
+            out.writeShort(1);
+            out.writeByte(1);   // #3 Utf8
+            out.writeUTF("java/lang/Object");
+            out.writeByte(7);   // #4 Class #3
+            out.writeShort(3);
+            out.writeShort(0x0020); // ACC_SUPER, package-private
+            out.writeShort(2);  // this class
+            out.writeShort(4);  // super class
+            out.writeShort(0);  // interfaces
+            out.writeShort(0);  // fields
+            out.writeShort(0);  // methods
+            out.writeShort(0);  // attributes
+        }
+        return bytes.toByteArray();
+    }
+}
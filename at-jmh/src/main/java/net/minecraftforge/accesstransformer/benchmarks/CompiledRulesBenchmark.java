@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformer.benchmarks;
+
+import net.minecraftforge.accesstransformer.AccessTransformer;
+import net.minecraftforge.accesstransformer.AccessTransformerEngine;
+import net.minecraftforge.accesstransformer.FieldTarget;
+import net.minecraftforge.accesstransformer.MethodTarget;
+import net.minecraftforge.accesstransformer.Target;
+import net.minecraftforge.accesstransformer.parser.AccessTransformerList;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares applying the rules from the rule list to applying them through the class generated from them, on a
+ * synthetic class for every class the rules target.
+ */
+@State(Scope.Benchmark)
+public class CompiledRulesBenchmark {
+    private static final String[] RESOURCES = {
+        "accesstransformer_forge_119.cfg",
+        "accesstransformer_firstaid_119.cfg",
+        "accesstransformer_jei_119.cfg"
+    };
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    private final List<ClassNode> classes = new ArrayList<>();
+    private final List<Type> types = new ArrayList<>();
+
+    @Setup
+    public void setup() throws Exception {
+        final AccessTransformerList list = new AccessTransformerList();
+        for (String resource : RESOURCES) {
+            list.loadFromResource(resource);
+            // The engine is shared by the whole JVM, and every fork only runs one setup
+            AccessTransformerEngine.INSTANCE.addResource(Paths.get(getClass().getClassLoader().getResource(resource).toURI()), resource);
+        }
+        AccessTransformerEngine.INSTANCE.setCompiled(compiled);
+
+        for (Map.Entry<String, List<AccessTransformer>> entry : list.getAccessTransformers().entrySet()) {
+            final ClassNode node = new ClassNode();
+            node.name = entry.getKey();
+            node.access = Opcodes.ACC_PRIVATE;
+            for (AccessTransformer at : entry.getValue()) {
+                final Target<?> target = at.getTarget();
+                if (target instanceof FieldTarget) {
+                    node.fields.add(new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, ((FieldTarget)target).getFieldName(), "I", null, null));
+                } else if (target instanceof MethodTarget) {
+                    final int idx = target.targetName().indexOf('(');
+                    node.methods.add(new MethodNode(Opcodes.ACC_PROTECTED, target.targetName().substring(0, idx), target.targetName().substring(idx), null, null));
+                }
+            }
+            // Most members of a targeted class are not targeted themselves
+            for (int i = 0; i < 8; i++) {
+                node.fields.add(new FieldNode(Opcodes.ACC_PRIVATE, "field" + i, "I", null, null));
+                node.methods.add(new MethodNode(Opcodes.ACC_PRIVATE, "method" + i, "()V", null, null));
+            }
+            classes.add(node);
+            types.add(Type.getObjectType(node.name));
+        }
+    }
+
+    @Benchmark
+    public void testTransform(Blackhole blackhole) {
+        for (int i = 0; i < classes.size(); i++)
+            blackhole.consume(AccessTransformerEngine.INSTANCE.transform(classes.get(i), types.get(i)));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformer.benchmarks;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Measures the wall time of a full command line run on a tiny JAR, which is dominated by JVM and library startup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProcessorStartupBenchmark {
+    private Path dir;
+    private List<String> command;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("at-startup");
+
+        final ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PRIVATE, "test/Startup", null, "java/lang/Object", null);
+        cw.visitEnd();
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(dir.resolve("in.jar")))) {
+            out.putNextEntry(new ZipEntry("test/Startup.class"));
+            out.write(cw.toByteArray());
+            out.closeEntry();
+        }
+        Files.write(dir.resolve("at.cfg"), "public test.Startup\n".getBytes(StandardCharsets.UTF_8));
+
+        // The jmh task puts the processor and its libraries on the module path, so the child needs both
+        final StringBuilder classpath = new StringBuilder(System.getProperty("java.class.path"));
+        final String modulePath = System.getProperty("jdk.module.path");
+        if (modulePath != null)
+            classpath.append(File.pathSeparatorChar).append(modulePath);
+
+        command = new ArrayList<>(Arrays.asList(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp", classpath.toString(),
+            "net.minecraftforge.accesstransformer.TransformerProcessor",
+            "--inJar", dir.resolve("in.jar").toString(),
+            "--atFile", dir.resolve("at.cfg").toString(),
+            "--outJar", dir.resolve("out.jar").toString()
+        ));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public int testStartup() throws Exception {
+        return run(command);
+    }
+
+    @Benchmark
+    public int testStartupWithLogFile() throws Exception {
+        final List<String> args = new ArrayList<>(command);
+        args.add("--logFile");
+        args.add(dir.resolve("at.log").toString());
+        return run(args);
+    }
+
+    private static int run(final List<String> args) throws Exception {
+        final Process process = new ProcessBuilder(args).redirectErrorStream(true).start();
+        try (OutputStream ignored = process.getOutputStream()) {
+            // Drain the output so the child can never block on a full pipe
+            final byte[] buf = new byte[8192];
+            while (process.getInputStream().read(buf) != -1);
+        }
+        final int exit = process.waitFor();
+        if (exit != 0)
+            throw new IllegalStateException("Processor exited with " + exit);
+        return exit;
+    }
+}
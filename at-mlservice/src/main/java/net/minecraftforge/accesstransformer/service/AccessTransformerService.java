@@ -16,6 +16,14 @@ import java.util.function.Consumer;
 
 @SuppressWarnings("unchecked")
 public class AccessTransformerService implements ILaunchPluginService {
+    /**
+     * Switches the engine to lazy loading, before any config is offered. A launch only loads a fraction of the
+     * classes the configs target, so only the rules of those are parsed, renamed and merged.
+     */
+    public AccessTransformerService() {
+        AccessTransformerEngine.INSTANCE.setLazy(true);
+    }
+
     @Override
     public String name() {
         return "accesstransformer";
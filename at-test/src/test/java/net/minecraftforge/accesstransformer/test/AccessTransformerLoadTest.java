@@ -6,8 +6,10 @@ package net.minecraftforge.accesstransformer.test;
 
 import net.minecraftforge.accesstransformer.AccessTransformer;
 import net.minecraftforge.accesstransformer.AccessTransformerEngine;
+import net.minecraftforge.accesstransformer.INameHandler;
 import net.minecraftforge.accesstransformer.parser.*;
 import net.minecraftforge.accesstransformer.service.AccessTransformerService;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -17,6 +19,7 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -24,6 +27,7 @@ import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -47,6 +51,49 @@ public class AccessTransformerLoadTest {
         testText(accessTransformers);
     }
 
+    @Test
+    public void testLoadForgeATLazily() throws Exception {
+        final AccessTransformerList eager = new AccessTransformerList();
+        eager.loadFromResource("forge_at.cfg");
+        final AccessTransformerList lazy = new AccessTransformerList(true);
+        lazy.loadFromResource("forge_at.cfg");
+        // Materialize class by class first, like transforming does
+        for (String className : eager.getAccessTransformers().keySet()) {
+            final Type type = Type.getObjectType(className);
+            assertTrue(lazy.containsClassTarget(type), className);
+            assertEquals(eager.getTransformersForTarget(type).toString(), lazy.getTransformersForTarget(type).toString(), className);
+        }
+        testText(lazy.getAccessTransformers());
+    }
+
+    @Test
+    public void testLazyRenamedConflict() {
+        final AccessTransformerList lazy = new AccessTransformerList(true);
+        // Both fields are renamed to the same one, which is only found once the class is materialized
+        lazy.setNameHandler(new INameHandler() {
+            @Override
+            public String translateClassName(final String className) {
+                return className;
+            }
+
+            @Override
+            public String translateFieldName(final String fieldName) {
+                return "c";
+            }
+
+            @Override
+            public String translateMethodName(final String methodName) {
+                return methodName;
+            }
+        });
+        lazy.load(Paths.get("conflict_at.cfg"), "conflict_at.cfg", Arrays.asList("public-f x.Y a", "public+f x.Y b"));
+
+        final Type type = Type.getObjectType("x/Y");
+        assertThrows(IllegalArgumentException.class, () -> lazy.getTransformersForTarget(type));
+        // The conflicting lines are left pending, so asking again fails the same way instead of silently applying nothing
+        assertThrows(IllegalArgumentException.class, () -> lazy.getTransformersForTarget(type));
+    }
+
     @Test
     public void testLoadATFromJar() throws Exception {
         final AccessTransformerService mls = new AccessTransformerService();
@@ -61,6 +108,23 @@ public class AccessTransformerLoadTest {
         }
     }
 
+    @Test
+    public void testServiceLoadsLazily() throws Exception {
+        final AccessTransformerService mls = new AccessTransformerService();
+        try (final FileSystem jarFS = FileSystems.newFileSystem(FileSystems.getDefault().getPath("src","test","resources","testatmod.jar"), getClass().getClassLoader())) {
+            mls.offerResource(jarFS.getPath("META-INF", "forge_at.cfg"), "forge_at.cfg");
+
+            UnsafeFieldAccess<AccessTransformerEngine, AccessTransformerList> masterList = UnsafeHacks.findField(AccessTransformerEngine.class, "masterList");
+            UnsafeFieldAccess<AccessTransformerList, Map<String, ?>> pending = UnsafeHacks.findField(AccessTransformerList.class, "pending");
+            final AccessTransformerList list = masterList.get(AccessTransformerEngine.INSTANCE);
+            // Nothing is parsed until a class asks for its rules
+            assertFalse(pending.get(list).isEmpty());
+            assertTrue(mls.handlesClass(Type.getObjectType("net/minecraft/block/Block"), false).contains(ILaunchPluginService.Phase.BEFORE));
+            testText(list.getAccessTransformers());
+            assertTrue(pending.get(list).isEmpty());
+        }
+    }
+
     private static void testText(final Map<String, List<AccessTransformer>> accessTransformers) throws Exception {
         accessTransformers.forEach((k,v) -> System.out.printf("Got %d ATs for %s:\n\t%s\n", v.size(), k, v.stream().map(Object::toString).collect(Collectors.joining("\n\t"))));
 
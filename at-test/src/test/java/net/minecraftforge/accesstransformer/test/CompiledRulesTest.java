@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformer.test;
+
+import net.minecraftforge.accesstransformer.AccessTransformer;
+import net.minecraftforge.accesstransformer.AccessTransformerEngine;
+import net.minecraftforge.accesstransformer.FieldTarget;
+import net.minecraftforge.accesstransformer.InnerClassTarget;
+import net.minecraftforge.accesstransformer.MethodTarget;
+import net.minecraftforge.accesstransformer.Target;
+import net.minecraftforge.accesstransformer.parser.AccessTransformerList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InnerClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import net.minecraftforge.unsafe.UnsafeFieldAccess;
+import net.minecraftforge.unsafe.UnsafeHacks;
+
+public class CompiledRulesTest {
+    @AfterEach
+    public void cleanUp() {
+        UnsafeFieldAccess<AccessTransformerEngine, AccessTransformerList> masterList = UnsafeHacks.findField(AccessTransformerEngine.class, "masterList");
+        masterList.set(AccessTransformerEngine.INSTANCE, new AccessTransformerList());
+        AccessTransformerEngine.INSTANCE.setCompiled(false);
+    }
+
+    @Test
+    public void testCompiledMatchesRuleList() throws Exception {
+        final AccessTransformerList list = new AccessTransformerList();
+        list.loadFromResource("forge_at.cfg");
+        UnsafeFieldAccess<AccessTransformerEngine, AccessTransformerList> masterList = UnsafeHacks.findField(AccessTransformerEngine.class, "masterList");
+        masterList.set(AccessTransformerEngine.INSTANCE, list);
+
+        final Map<String, List<AccessTransformer>> rules = list.getAccessTransformers();
+        final List<ClassNode> expected = classes(rules);
+        final List<ClassNode> actual = classes(rules);
+
+        AccessTransformerEngine.INSTANCE.setCompiled(false);
+        expected.forEach(node -> AccessTransformerEngine.INSTANCE.transform(node, Type.getObjectType(node.name)));
+        AccessTransformerEngine.INSTANCE.setCompiled(true);
+        actual.forEach(node -> AccessTransformerEngine.INSTANCE.transform(node, Type.getObjectType(node.name)));
+
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(toString(expected.get(i)), toString(actual.get(i)));
+    }
+
+    @Test
+    public void testLazyMatchesEager() throws Exception {
+        final AccessTransformerList eager = new AccessTransformerList();
+        eager.loadFromResource("forge_at.cfg");
+        final AccessTransformerList lazy = new AccessTransformerList(true);
+        lazy.loadFromResource("forge_at.cfg");
+        UnsafeFieldAccess<AccessTransformerEngine, AccessTransformerList> masterList = UnsafeHacks.findField(AccessTransformerEngine.class, "masterList");
+
+        final Map<String, List<AccessTransformer>> rules = eager.getAccessTransformers();
+        final List<ClassNode> expected = classes(rules);
+        final List<ClassNode> actual = classes(rules);
+
+        masterList.set(AccessTransformerEngine.INSTANCE, eager);
+        expected.forEach(node -> AccessTransformerEngine.INSTANCE.transform(node, Type.getObjectType(node.name)));
+
+        // Every class is transformed twice at the same time, so threads race to materialize the same rules
+        masterList.set(AccessTransformerEngine.INSTANCE, lazy);
+        final List<ClassNode> again = classes(rules);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < actual.size(); i++) {
+                final ClassNode first = actual.get(i);
+                final ClassNode second = again.get(i);
+                futures.add(executor.submit(() -> AccessTransformerEngine.INSTANCE.transform(first, Type.getObjectType(first.name))));
+                futures.add(executor.submit(() -> AccessTransformerEngine.INSTANCE.transform(second, Type.getObjectType(second.name))));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(toString(expected.get(i)), toString(actual.get(i)));
+            assertEquals(toString(expected.get(i)), toString(again.get(i)));
+        }
+    }
+
+    /**
+     * A class for every targeted class, with every targeted member and some that aren't, all with random access.
+     */
+    private static List<ClassNode> classes(final Map<String, List<AccessTransformer>> rules) {
+        final Random random = new Random(42);
+        final List<ClassNode> ret = new ArrayList<>();
+        rules.forEach((name, ats) -> {
+            final ClassNode node = new ClassNode();
+            node.name = name;
+            node.access = random.nextInt(64);
+            node.innerClasses.add(new InnerClassNode(name, null, null, random.nextInt(64)));
+            for (AccessTransformer at : ats) {
+                final Target<?> target = at.getTarget();
+                if (target instanceof FieldTarget) {
+                    node.fields.add(new FieldNode(random.nextInt(64), ((FieldTarget)target).getFieldName(), "I", null, null));
+                } else if (target instanceof MethodTarget) {
+                    final int idx = target.targetName().indexOf('(');
+                    final MethodNode method = new MethodNode(random.nextInt(64), target.targetName().substring(0, idx), target.targetName().substring(idx), null, null);
+                    method.instructions.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, name, method.name, method.desc, false));
+                    node.methods.add(method);
+                } else if (target instanceof InnerClassTarget) {
+                    node.innerClasses.add(new InnerClassNode(target.targetName(), null, null, random.nextInt(64)));
+                }
+            }
+            node.fields.add(new FieldNode(random.nextInt(64), "untargeted", "I", null, null));
+            node.methods.add(new MethodNode(random.nextInt(64), "untargeted", "()V", null, null));
+            ret.add(node);
+        });
+        return ret;
+    }
+
+    private static String toString(final ClassNode node) {
+        final StringBuilder ret = new StringBuilder(node.name).append(' ').append(node.access);
+        for (InnerClassNode inner : node.innerClasses)
+            ret.append(" inner ").append(inner.name).append(' ').append(inner.access);
+        for (FieldNode field : node.fields)
+            ret.append(" field ").append(field.name).append(' ').append(field.access);
+        for (MethodNode method : node.methods) {
+            ret.append(" method ").append(method.name).append(method.desc).append(' ').append(method.access);
+            if (method.instructions.size() > 0)
+                ret.append(' ').append(method.instructions.getFirst().getOpcode());
+        }
+        return ret.toString();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformer.test;
+
+import net.minecraftforge.accesstransformer.AccessTransformerEngine;
+import net.minecraftforge.accesstransformer.parser.AccessTransformerList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InnerClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import net.minecraftforge.unsafe.UnsafeFieldAccess;
+import net.minecraftforge.unsafe.UnsafeHacks;
+
+public class PackageTargetTest {
+    @AfterEach
+    public void cleanUp() {
+        UnsafeFieldAccess<AccessTransformerEngine, AccessTransformerList> masterList = UnsafeHacks.findField(AccessTransformerEngine.class, "masterList");
+        masterList.set(AccessTransformerEngine.INSTANCE, new AccessTransformerList());
+        AccessTransformerEngine.INSTANCE.setCompiled(false);
+    }
+
+    @Test
+    public void testPackageTargets() {
+        final AccessTransformerList list = load(
+            "protected-f a.b.**",
+            "public a.b.c.**",
+            "public a.b.c.D x",
+            "private a.b.c.D y"
+        );
+        assertTrue(list.containsClassTarget(Type.getObjectType("a/b/C")));
+        assertTrue(list.containsClassTarget(Type.getObjectType("a/b/c/d/E")));
+        assertFalse(list.containsClassTarget(Type.getObjectType("a/B")));
+        assertFalse(list.containsClassTarget(Type.getObjectType("a/bc/D")));
+        assertEquals(2, list.getPackageTransformers("a/b/c/D").size());
+
+        for (boolean compiled : new boolean[] {false, true}) {
+            AccessTransformerEngine.INSTANCE.setCompiled(compiled);
+            final ClassNode node = node("a/b/c/D");
+            AccessTransformerEngine.INSTANCE.transform(node, Type.getObjectType(node.name));
+            assertEquals(Opcodes.ACC_PUBLIC, node.access);
+            assertEquals(Opcodes.ACC_PUBLIC, node.innerClasses.get(0).access, "Own entry");
+            assertEquals(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, node.innerClasses.get(1).access, "Entry outside the package");
+            assertEquals(Opcodes.ACC_PUBLIC, node.fields.get(0).access, "x");
+            assertEquals(Opcodes.ACC_PUBLIC, node.fields.get(1).access, "y");
+            assertEquals(Opcodes.ACC_PUBLIC, node.methods.get(0).access, "m");
+        }
+
+        final ClassNode outer = node("a/b/E");
+        AccessTransformerEngine.INSTANCE.transform(outer, Type.getObjectType(outer.name));
+        assertEquals(Opcodes.ACC_PROTECTED, outer.access);
+        assertEquals(Opcodes.ACC_PROTECTED, outer.fields.get(0).access);
+    }
+
+    @Test
+    public void testPackageConflict() {
+        assertThrows(IllegalArgumentException.class, () -> load("public-f a.b.**", "public+f a.b.**"));
+        assertThrows(IllegalArgumentException.class, () -> load("public a.b.** x"));
+        // A package rule can't decide the final state of a specific rule by being applied first
+        assertThrows(IllegalArgumentException.class, () -> load("protected-f a.b.**", "public+f a.b.c.D x"));
+        assertThrows(IllegalArgumentException.class, () -> load("protected-f a.b.**", "public+f a.b.c.D"));
+        assertThrows(IllegalArgumentException.class, () -> load("protected+f a.b.**", "public-f a.b.c.**"));
+        load("protected-f a.b.**", "public-f a.b.c.D x", "public a.b.c.D y", "public+f a.bc.D x");
+    }
+
+    @Test
+    public void testPackageConflictAcrossFiles() {
+        final AccessTransformerList classFirst = load("public+f a.b.c.D x");
+        assertThrows(IllegalArgumentException.class, () -> classFirst.load(Paths.get("second_at.cfg"), "second_at.cfg", Arrays.asList("protected-f a.b.**")));
+        assertTrue(classFirst.getPackageTransformers().isEmpty(), "Nothing is loaded from a conflicting file");
+
+        final AccessTransformerList packageFirst = load("protected-f a.b.**");
+        assertThrows(IllegalArgumentException.class, () -> packageFirst.load(Paths.get("second_at.cfg"), "second_at.cfg", Arrays.asList("public+f a.b.c.D x")));
+
+        final AccessTransformerList subpackageFirst = load("protected-f a.b.c.**");
+        assertThrows(IllegalArgumentException.class, () -> subpackageFirst.load(Paths.get("second_at.cfg"), "second_at.cfg", Arrays.asList("protected+f a.b.**")));
+    }
+
+    private static AccessTransformerList load(final String... lines) {
+        final AccessTransformerList list = new AccessTransformerList();
+        list.load(Paths.get("package_at.cfg"), "package_at.cfg", Arrays.asList(lines));
+        UnsafeFieldAccess<AccessTransformerEngine, AccessTransformerList> masterList = UnsafeHacks.findField(AccessTransformerEngine.class, "masterList");
+        masterList.set(AccessTransformerEngine.INSTANCE, list);
+        return list;
+    }
+
+    private static ClassNode node(final String name) {
+        final ClassNode node = new ClassNode();
+        node.name = name;
+        node.access = Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL;
+        node.innerClasses.add(new InnerClassNode(name, null, null, Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL));
+        node.innerClasses.add(new InnerClassNode("z/Y", null, null, Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL));
+        node.fields.add(new FieldNode(Opcodes.ACC_PRIVATE, "x", "I", null, null));
+        node.fields.add(new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "y", "I", null, null));
+        node.methods.add(new MethodNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "m", "()V", null, null));
+        return node;
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformer.test;
+
+import net.minecraftforge.accesstransformer.TransformerProcessor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Enumeration;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+public class TransformerProcessorTest {
+    private static final String FINGERPRINT = "META-INF/accesstransformer.fingerprint";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testDeterministicOutput() throws Exception {
+        final Path cfg = config("public a.B f");
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("z/Last.class", classFile("z/Last"));
+        entries.put("a/B.class", classFile("a/B"));
+        entries.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes());
+        final Path in = jar("in.jar", entries);
+
+        final Path first = dir.resolve("first.jar");
+        final Path second = dir.resolve("second.jar");
+        TransformerProcessor.run("--inJar", in.toString(), "--atFile", cfg.toString(), "--outJar", first.toString(), "--deterministic");
+        TransformerProcessor.run("--inJar", in.toString(), "--atFile", cfg.toString(), "--outJar", second.toString(), "--deterministic");
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+
+        // The same entries in another order, with other times, give the same output
+        final Map<String, byte[]> reordered = new LinkedHashMap<>();
+        reordered.put("a/B.class", entries.get("a/B.class"));
+        reordered.put("META-INF/MANIFEST.MF", entries.get("META-INF/MANIFEST.MF"));
+        reordered.put("z/Last.class", entries.get("z/Last.class"));
+        final Path other = dir.resolve("other.jar");
+        Files.write(other, jarBytes(reordered, 1_000_000_000_000L));
+        final Path third = dir.resolve("third.jar");
+        TransformerProcessor.run("--inJar", other.toString(), "--atFile", cfg.toString(), "--outJar", third.toString(), "--deterministic");
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(third));
+
+        final long constantTime = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).getTimeInMillis();
+        final List<String> names = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(first.toFile())) {
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                final ZipEntry entry = e.nextElement();
+                names.add(entry.getName());
+                assertEquals(constantTime, entry.getTime(), entry.getName());
+            }
+        }
+        // The manifest first, then sorted
+        assertEquals(List.of("META-INF/MANIFEST.MF", "a/B.class", "z/Last.class"), names);
+        assertEquals(Opcodes.ACC_PUBLIC, fieldAccess(read(first).get("a/B.class")));
+    }
+
+    @Test
+    public void testDirectoryOutOfPlace() throws Exception {
+        final Path cfg = config("public a.B f");
+        final Path in = dir.resolve("in");
+        final Path out = dir.resolve("out");
+        write(in.resolve("a/B.class"), classFile("a/B"));
+        write(in.resolve("c/D.class"), classFile("c/D"));
+        write(in.resolve("res.txt"), "resource".getBytes());
+
+        TransformerProcessor.run("--inDir", in.toString(), "--outDir", out.toString(), "--atFile", cfg.toString());
+        assertEquals(Opcodes.ACC_PUBLIC, fieldAccess(Files.readAllBytes(out.resolve("a/B.class"))));
+        assertEquals(Opcodes.ACC_PRIVATE, fieldAccess(Files.readAllBytes(out.resolve("c/D.class"))));
+        assertArrayEquals("resource".getBytes(), Files.readAllBytes(out.resolve("res.txt")));
+        assertArrayEquals(classFile("a/B"), Files.readAllBytes(in.resolve("a/B.class")), "Input untouched");
+        // The index must not end up on the consumer's classpath
+        assertEquals(List.of("a/B.class", "c/D.class", "res.txt"), files(out));
+        assertTrue(Files.exists(dir.resolve("out.accesstransformer.index")));
+
+        // Unchanged files are not written again
+        final FileTime old = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(out.resolve("a/B.class"), old);
+        Files.delete(in.resolve("c/D.class"));
+        TransformerProcessor.run("--inDir", in.toString(), "--outDir", out.toString(), "--atFile", cfg.toString());
+        assertEquals(old, Files.getLastModifiedTime(out.resolve("a/B.class")));
+        // Outputs of removed inputs are deleted, along with the directories that leaves empty
+        assertEquals(List.of("a/B.class", "res.txt"), files(out));
+        assertFalse(Files.exists(out.resolve("c")));
+
+        // Changing the rules transforms everything again
+        final Path other = config("public a.B m()V");
+        TransformerProcessor.run("--inDir", in.toString(), "--outDir", out.toString(), "--atFile", other.toString());
+        assertEquals(Opcodes.ACC_PRIVATE, fieldAccess(Files.readAllBytes(out.resolve("a/B.class"))));
+        assertEquals(Opcodes.ACC_PUBLIC, methodAccess(Files.readAllBytes(out.resolve("a/B.class"))));
+    }
+
+    @Test
+    public void testDirectoryInPlace() throws Exception {
+        final Path cfg = config("public a.B f");
+        final Path classes = dir.resolve("classes");
+        final Path index = dir.resolve("classes.index");
+        write(classes.resolve("a/B.class"), classFile("a/B"));
+        write(classes.resolve("c/D.class"), classFile("c/D"));
+
+        TransformerProcessor.run("--inDir", classes.toString(), "--atFile", cfg.toString(), "--indexFile", index.toString());
+        assertEquals(Opcodes.ACC_PUBLIC, fieldAccess(Files.readAllBytes(classes.resolve("a/B.class"))));
+        assertEquals(List.of("a/B.class", "c/D.class"), files(classes));
+        final List<String> lines = Files.readAllLines(index);
+        assertEquals(3, lines.size(), "Rules hash and one line per file");
+        assertTrue(lines.get(1).startsWith("a/B.class\t"));
+        assertTrue(lines.get(2).startsWith("c/D.class\t"));
+
+        // Files rewritten in place are recorded as they are after the run, so they are skipped next time
+        final FileTime old = Files.getLastModifiedTime(classes.resolve("a/B.class"));
+        TransformerProcessor.run("--inDir", classes.toString(), "--atFile", cfg.toString(), "--indexFile", index.toString());
+        assertEquals(old, Files.getLastModifiedTime(classes.resolve("a/B.class")));
+        assertEquals(lines, Files.readAllLines(index));
+
+        // A new class is picked up
+        write(classes.resolve("a/E.class"), classFile("a/E"));
+        TransformerProcessor.run("--inDir", classes.toString(), "--atFile", config("public a.E f").toString(), "--indexFile", index.toString());
+        assertEquals(Opcodes.ACC_PUBLIC, fieldAccess(Files.readAllBytes(classes.resolve("a/E.class"))));
+    }
+
+    @Test
+    public void testBoundedPipeline() throws Exception {
+        final StringBuilder rules = new StringBuilder();
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        final byte[] resource = new byte[64 * 1024];
+        for (int i = 0; i < 200; i++) {
+            entries.put("a/C" + i + ".class", classFile("a/C" + i));
+            if (i % 10 == 0)
+                entries.put("res/" + i + ".bin", resource);
+            if (i % 2 == 0)
+                rules.append("public a.C").append(i).append(" f\n");
+        }
+        final Path cfg = config(rules.toString());
+        final Path in = jar("in.jar", entries);
+
+        // Far less than a single entry, so every entry has to wait for the one before it to be written
+        final Path out = dir.resolve("out.jar");
+        TransformerProcessor.run("--inJar", in.toString(), "--atFile", cfg.toString(), "--outJar", out.toString(), "--maxInflightBytes", "16", "--threads", "4");
+        final Map<String, byte[]> expected = read(out);
+        checkPipelineOutput(entries, expected);
+
+        // Entries read from a stream have no size in their local header, so they are accounted for once read
+        final Map<String, byte[]> streamed = read(streamed(Files.readAllBytes(in), "--stdin", "--atFile", cfg.toString(), "--maxInflightBytes", "16", "--threads", "4"));
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(streamed.keySet()));
+        for (String name : expected.keySet())
+            assertArrayEquals(expected.get(name), streamed.get(name), name);
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        final Path cfg = config("public a.B f");
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a/B.class", classFile("a/B"));
+        entries.put("res.txt", "resource".getBytes());
+        final Path in = jar("in.jar", entries);
+
+        // Standard input to standard output, the default when reading from standard input
+        final Map<String, byte[]> fromStdin = read(streamed(Files.readAllBytes(in), "--stdin", "--atFile", cfg.toString()));
+        assertEquals(List.of("a/B.class", "res.txt"), new ArrayList<>(fromStdin.keySet()));
+        assertEquals(Opcodes.ACC_PUBLIC, fieldAccess(fromStdin.get("a/B.class")));
+
+        // A file to standard output
+        final Map<String, byte[]> toStdout = read(streamed(new byte[0], "--inJar", in.toString(), "--stdout", "--atFile", cfg.toString()));
+        assertEquals(new ArrayList<>(fromStdin.keySet()), new ArrayList<>(toStdout.keySet()));
+        for (String name : fromStdin.keySet())
+            assertArrayEquals(fromStdin.get(name), toStdout.get(name), name);
+
+        // Standard input to a file
+        final Path out = dir.resolve("out.jar");
+        streamed(Files.readAllBytes(in), "--stdin", "--outJar", out.toString(), "--atFile", cfg.toString());
+        assertEquals(Opcodes.ACC_PUBLIC, fieldAccess(read(out).get("a/B.class")));
+
+        // The host owns standard input and output when embedded
+        assertThrows(IllegalArgumentException.class, () -> TransformerProcessor.run("--stdin", "--atFile", cfg.toString()));
+    }
+
+    @Test
+    public void testSkipIfCurrent() throws Exception {
+        final Path cfg = config("public a.B f");
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a/B.class", classFile("a/B"));
+        final Path in = jar("in.jar", entries);
+        final Path out = dir.resolve("out.jar");
+
+        // Only written when asked for, as the input has to be hashed for it
+        TransformerProcessor.run("--inJar", in.toString(), "--atFile", cfg.toString(), "--outJar", out.toString());
+        assertFalse(read(out).containsKey(FINGERPRINT));
+
+        TransformerProcessor.run("--inJar", in.toString(), "--atFile", cfg.toString(), "--outJar", out.toString(), "--skipIfCurrent");
+        final List<String> lines = new String(read(out).get(FINGERPRINT)).lines().collect(Collectors.toList());
+        assertEquals(3, lines.size(), lines::toString);
+        assertTrue(lines.get(0).startsWith("rules="), lines.get(0));
+        assertEquals("input=" + sha1(Files.readAllBytes(in)), lines.get(1));
+        assertTrue(lines.get(2).startsWith("version=") && !lines.get(2).equals("version=null"), lines.get(2));
+
+        final FileTime old = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(out, old);
+        TransformerProcessor.run("--inJar", in.toString(), "--atFile", cfg.toString(), "--outJar", out.toString(), "--skipIfCurrent");
+        assertEquals(old, Files.getLastModifiedTime(out), "Current output is left untouched");
+
+        final Path other = config("public a.B m()V");
+        TransformerProcessor.run("--inJar", in.toString(), "--atFile", other.toString(), "--outJar", out.toString(), "--skipIfCurrent");
+        assertNotEquals(old, Files.getLastModifiedTime(out), "Output is rewritten when the rules change");
+        assertEquals(Opcodes.ACC_PUBLIC, methodAccess(read(out).get("a/B.class")));
+
+        Files.setLastModifiedTime(out, old);
+        entries.put("res.txt", "resource".getBytes());
+        jar("in.jar", entries);
+        TransformerProcessor.run("--inJar", in.toString(), "--atFile", other.toString(), "--outJar", out.toString(), "--skipIfCurrent");
+        assertNotEquals(old, Files.getLastModifiedTime(out), "Output is rewritten when the input changes");
+        assertTrue(read(out).containsKey("res.txt"));
+    }
+
+    @Test
+    public void testAuditLog() throws Exception {
+        final Path cfg = config("public a.B", "public a.B f", "public+f a.C m()V");
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a/B.class", classFile("a/B"));
+        entries.put("a/C.class", classFile("a/C"));
+        entries.put("a/D.class", classFile("a/D"));
+        final Path in = jar("in.jar", entries);
+        final Path audit = dir.resolve("audit.jsonl");
+
+        TransformerProcessor.run("--inJar", in.toString(), "--atFile", cfg.toString(), "--outJar", dir.resolve("out.jar").toString(), "--auditFile", audit.toString(), "--threads", "4");
+        // Classes are transformed in parallel, so only the lines of each class keep their order
+        final List<String> lines = Files.readAllLines(audit).stream().sorted().collect(Collectors.toList());
+        assertEquals(List.of(
+            "{\"class\":\"a/B\",\"kind\":\"class\",\"from\":\"default\",\"to\":\"public\"}",
+            "{\"class\":\"a/B\",\"kind\":\"field\",\"name\":\"f\",\"desc\":\"I\",\"from\":\"private\",\"to\":\"public\"}",
+            "{\"class\":\"a/C\",\"kind\":\"method\",\"name\":\"m\",\"desc\":\"()V\",\"from\":\"private\",\"to\":\"public final\"}"
+        ), lines);
+    }
+
+    @Test
+    public void testInnerClassReferences() throws Exception {
+        final Path cfg = config("public a.B$I");
+        final ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_SUPER, "a/D", null, "java/lang/Object", null);
+        cw.visitInnerClass("a/B$I", "a/B", "I", Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC);
+        cw.visitInnerClass("a/E$J", "a/E", "J", Opcodes.ACC_PRIVATE);
+        cw.visitField(Opcodes.ACC_PRIVATE, "f", "I", null, null).visitEnd();
+        cw.visitEnd();
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a/D.class", cw.toByteArray());
+        entries.put("a/F.class", classFile("a/F"));
+        final Path in = jar("in.jar", entries);
+        final Path out = dir.resolve("out.jar");
+        final Path audit = dir.resolve("audit.jsonl");
+
+        TransformerProcessor.run("--inJar", in.toString(), "--atFile", cfg.toString(), "--outJar", out.toString(), "--auditFile", audit.toString());
+        final Map<String, byte[]> output = read(out);
+        // Only the entry of the targeted inner class changes, in a class that isn't targeted itself
+        final ClassNode node = new ClassNode();
+        new ClassReader(output.get("a/D.class")).accept(node, 0);
+        assertEquals(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, node.innerClasses.get(0).access);
+        assertEquals(Opcodes.ACC_PRIVATE, node.innerClasses.get(1).access);
+        assertEquals(Opcodes.ACC_PRIVATE, node.fields.get(0).access);
+        assertArrayEquals(entries.get("a/F.class"), output.get("a/F.class"));
+        assertEquals(List.of("{\"class\":\"a/D\",\"kind\":\"inner\",\"name\":\"a/B$I\",\"from\":\"private\",\"to\":\"public\"}"), Files.readAllLines(audit));
+    }
+
+    private static String sha1(final byte[] data) throws Exception {
+        final StringBuilder ret = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-1").digest(data))
+            ret.append(String.format("%02x", b));
+        return ret.toString();
+    }
+
+    private static void checkPipelineOutput(final Map<String, byte[]> entries, final Map<String, byte[]> output) {
+        assertEquals(new ArrayList<>(entries.keySet()), new ArrayList<>(output.keySet()), "Entries are written in their original order");
+        for (int i = 0; i < 200; i++)
+            assertEquals(i % 2 == 0 ? Opcodes.ACC_PUBLIC : Opcodes.ACC_PRIVATE, fieldAccess(output.get("a/C" + i + ".class")), "a/C" + i);
+        assertArrayEquals(entries.get("res/0.bin"), output.get("res/0.bin"));
+    }
+
+    /**
+     * Runs the processor from the command line, with the given bytes as standard input.
+     *
+     * @return The jar written to standard output
+     */
+    private Path streamed(final byte[] input, final String... args) throws IOException {
+        final InputStream in = System.in;
+        final PrintStream out = System.out;
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            System.setIn(new ByteArrayInputStream(input));
+            System.setOut(new PrintStream(bytes, true));
+            TransformerProcessor.main(args);
+        } finally {
+            System.setIn(in);
+            System.setOut(out);
+        }
+        return Files.write(Files.createTempFile(dir, "stdout", ".jar"), bytes.toByteArray());
+    }
+
+    /**
+     * A class with a private field {@code f} and a private method {@code m()V}.
+     */
+    static byte[] classFile(final String name) {
+        final ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        cw.visitField(Opcodes.ACC_PRIVATE, "f", "I", null, null).visitEnd();
+        cw.visitMethod(Opcodes.ACC_PRIVATE, "m", "()V", null, null).visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    static int fieldAccess(final byte[] data) {
+        final ClassNode node = new ClassNode();
+        new ClassReader(data).accept(node, 0);
+        return node.fields.get(0).access;
+    }
+
+    static int methodAccess(final byte[] data) {
+        final ClassNode node = new ClassNode();
+        new ClassReader(data).accept(node, 0);
+        return node.methods.get(0).access;
+    }
+
+    static void write(final Path path, final byte[] data) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, data);
+    }
+
+    /**
+     * @return The relative paths of every file in a directory, sorted
+     */
+    static List<String> files(final Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile).map(p -> root.relativize(p).toString().replace('\\', '/')).sorted().collect(Collectors.toList());
+        }
+    }
+
+    Path config(final String... lines) throws IOException {
+        return Files.write(Files.createTempFile(dir, "at", ".cfg"), List.of(lines));
+    }
+
+    Path jar(final String name, final Map<String, byte[]> entries) throws IOException {
+        final Path path = dir.resolve(name);
+        Files.write(path, jarBytes(entries));
+        return path;
+    }
+
+    static byte[] jarBytes(final Map<String, byte[]> entries) throws IOException {
+        return jarBytes(entries, -1);
+    }
+
+    /**
+     * @param time The time of every entry, or -1 for the current time
+     */
+    static byte[] jarBytes(final Map<String, byte[]> entries, final long time) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                final ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                if (time != -1)
+                    zipEntry.setTime(time);
+                out.putNextEntry(zipEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static Map<String, byte[]> read(final Path jar) throws IOException {
+        final Map<String, byte[]> ret = new LinkedHashMap<>();
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+                final ZipEntry entry = e.nextElement();
+                try (InputStream is = zip.getInputStream(entry)) {
+                    ret.put(entry.getName(), is.readAllBytes());
+                }
+            }
+        }
+        return ret;
+    }
+}
@@ -38,7 +38,7 @@ public class AccessTransformer {
         return this.targetAccess;
     }
 
-    FinalState getTargetFinalState() {
+    public FinalState getTargetFinalState() {
         return this.targetFinalState;
     }
 
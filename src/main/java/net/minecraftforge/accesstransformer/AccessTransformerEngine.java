@@ -10,22 +10,46 @@ import org.objectweb.asm.tree.*;
 import net.minecraftforge.accesstransformer.parser.*;
 
 import java.io.*;
+import java.nio.charset.*;
 import java.nio.file.*;
+import java.security.*;
 import java.util.*;
 import java.util.stream.*;
 
 public enum AccessTransformerEngine {
     INSTANCE;
 
-    private final AccessTransformerList masterList = new AccessTransformerList();
+    private AccessTransformerList masterList = new AccessTransformerList();
+    private INameHandler nameHandler = new IdentityNameHandler();
+    private volatile boolean compile;
+    // Generated from the master list on first use, and thrown away whenever it changes
+    private volatile CompiledRules compiledRules;
 
     public boolean transform(ClassNode clazzNode, final Type classType) {
         // this should never happen but safety first
         if (!masterList.containsClassTarget(classType)) {
             return false;
         }
+        return transformTargeted(clazzNode, classType);
+    }
+
+    /**
+     * Transforms a class that {@link #handlesClass(Type)} was already checked for, so the check isn't done twice.
+     */
+    boolean transformTargeted(ClassNode clazzNode, final Type classType) {
         // list of methods that may have changed from private visibility, and therefore will need INVOKE_SPECIAL changed to INVOKE_VIRTUAL
         final Set<String> privateChanged = new HashSet<>();
+        // package rules are the broadest, so they go first. Their final states never conflict with the class's own rules
+        for (AccessTransformer at : masterList.getPackageTransformers(classType.getInternalName()))
+            at.applyModifier(clazzNode, ClassNode.class, privateChanged);
+
+        final CompiledRules compiled = compiledRules();
+        if (compiled != null) {
+            compiled.apply(classType.getInternalName(), clazzNode, privateChanged);
+            fixPrivateCalls(clazzNode, privateChanged);
+            return true;
+        }
+
         final Map<TargetType, Map<String,AccessTransformer>> transformersForTarget = masterList.getTransformersForTarget(classType);
         if (transformersForTarget.containsKey(TargetType.CLASS)) {
             // apply class transform and any wild cards
@@ -44,6 +68,11 @@ public enum AccessTransformerEngine {
                     .filter(mn -> methodTransformers.containsKey(mn.name + mn.desc))
                     .forEach(mn -> methodTransformers.get(mn.name + mn.desc).applyModifier(mn, MethodNode.class, privateChanged));
         }
+        fixPrivateCalls(clazzNode, privateChanged);
+        return true;
+    }
+
+    private static void fixPrivateCalls(final ClassNode clazzNode, final Set<String> privateChanged) {
         if (!privateChanged.isEmpty()) {
             clazzNode.methods.forEach(mn ->
                 StreamSupport.stream(Spliterators.spliteratorUnknownSize(mn.instructions.iterator(), Spliterator.ORDERED), false)
@@ -52,12 +81,57 @@ public enum AccessTransformerEngine {
                     .filter(m -> privateChanged.contains(m.name + m.desc))
                     .forEach(m -> m.setOpcode(Opcodes.INVOKEVIRTUAL)));
         }
-        return true;
+    }
+
+    /**
+     * Sets whether to apply the rules through a class generated from them, which avoids walking the rule maps for
+     * every class. It is generated on the first transform after the rules last changed, so it is best used once
+     * every rule is loaded, and falls back to the rule maps if there are too many rules to fit in a class.
+     */
+    public void setCompiled(final boolean compile) {
+        this.compile = compile;
+        // The rules may have been replaced without going through this engine, generate them again to be safe
+        this.compiledRules = null;
+    }
+
+    /**
+     * Sets whether to only parse, rename and merge the rules of a class the first time it is transformed, so the rules
+     * of the many targeted classes that are never loaded in a given launch cost next to nothing. Conflicts only caused
+     * by renaming are then thrown when their class is transformed, rather than when the rules are loaded.
+     *
+     * @throws IllegalStateException If any rules were already loaded, as this replaces them
+     */
+    public void setLazy(final boolean lazy) {
+        if (this.masterList.isLoaded())
+            throw new IllegalStateException("Access transformers have already been loaded");
+        this.masterList = new AccessTransformerList(lazy);
+        this.masterList.setNameHandler(this.nameHandler);
+        this.compiledRules = null;
+    }
+
+    private CompiledRules compiledRules() {
+        if (!this.compile)
+            return null;
+
+        CompiledRules ret = this.compiledRules;
+        if (ret == null) {
+            synchronized (this) {
+                ret = this.compiledRules;
+                if (ret == null) {
+                    ret = RulesCompiler.compile(masterList.getAccessTransformers());
+                    if (ret == null)
+                        this.compile = false;
+                    this.compiledRules = ret;
+                }
+            }
+        }
+        return ret;
     }
 
     public void addResource(final Path path, final String resourceName) {
         try {
             masterList.loadFromPath(path, resourceName);
+            this.compiledRules = null;
         } catch (IOException e) {
             throw new IllegalArgumentException("Invalid path "+ path, e);
         }
@@ -68,12 +142,46 @@ public enum AccessTransformerEngine {
     }
 
     public void acceptNaming(INameHandler handler) {
+        this.nameHandler = handler;
         this.masterList.setNameHandler(handler);
     }
 
-    Map<String, AccessTransformer> getTransformers(Type classType, TargetType targetType) {
-        final Map<TargetType, Map<String,AccessTransformer>> transformersForTarget = masterList.getTransformersForTarget(classType);
-        Map<String, AccessTransformer> ret = transformersForTarget.get(targetType);
-        return ret == null ? Collections.emptyMap() : ret;
+    AccessTransformerList getRules() {
+        return this.masterList;
+    }
+
+    /**
+     * Replaces every loaded rule, for hosts that run the processor more than once in the same JVM.
+     */
+    void setRules(final AccessTransformerList rules) {
+        this.masterList = rules;
+        this.compiledRules = null;
+    }
+
+    /**
+     * Hashes the effective rule set, after merging and renaming, so that comments, ordering and
+     * which file a rule came from do not affect the result.
+     */
+    String getRulesHash() {
+        final MessageDigest digest = Hashes.sha1();
+        Stream.concat(masterList.getAccessTransformers().values().stream().flatMap(List::stream), masterList.getPackageTransformers().values().stream())
+            .map(at -> at.getTarget() + " " + at.getTargetAccess() + " " + at.getTargetFinalState() + '\n')
+            .sorted()
+            .forEach(line -> digest.update(line.getBytes(StandardCharsets.UTF_8)));
+        return Hashes.toHex(digest.digest());
+    }
+
+    /**
+     * Applies the package and class level transformers of {@code innerName} to the access flags of an InnerClasses entry.
+     */
+    int transformInnerClass(final String innerName, int access) {
+        for (AccessTransformer at : masterList.getPackageTransformers(innerName))
+            access = at.getTargetAccess().mergeWith(at.getTargetFinalState().mergeWith(access));
+        final List<AccessTransformer> transformers = masterList.getClassTransformers(innerName);
+        if (transformers != null) {
+            for (AccessTransformer at : transformers)
+                access = at.getTargetAccess().mergeWith(at.getTargetFinalState().mergeWith(access));
+        }
+        return access;
     }
 }
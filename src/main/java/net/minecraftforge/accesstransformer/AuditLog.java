@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformer;
+
+import org.objectweb.asm.Opcodes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records every access change made by the processor as one JSON object per line.
+ * <p>
+ * Transforming threads only queue a small record, formatting and file IO happen on a single background writer.
+ * Records are queued on a bounded lock-free ring: producers claim a slot with a single compare-and-set and never
+ * take a lock or wait on each other. When the writer falls behind and the ring is full, producers back off until a
+ * slot is free rather than dropping records, so the audit is always complete at the cost of slowing the transform
+ * down to the speed of the disk. Once writing fails every further record fails too, rather than the audit silently
+ * missing entries.
+ */
+final class AuditLog implements Closeable {
+    // Marks the end of the records, queued by close
+    private static final Record END = new Record(null, null, null, null, 0, 0);
+    private static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+    // How long the writer and producers park when there is nothing to take or no room to put
+    private static final long BACKOFF_NANOS = 50_000;
+
+    private final AtomicReferenceArray<Record> slots = new AtomicReferenceArray<>(CAPACITY);
+    // The position each slot is ready for: to be put at while equal to it, to be taken at while one past it
+    private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private final AtomicLong tail = new AtomicLong();
+    // Only touched by the writer thread
+    private long head;
+    private final Writer writer;
+    private final Thread thread;
+    private volatile Throwable error;
+
+    AuditLog(final Path file) throws IOException {
+        for (int i = 0; i < CAPACITY; i++)
+            sequences.set(i, i);
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        thread = new Thread(this::drain, "AT-Audit");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param owner The internal name of the class that was transformed
+     * @param kind  What was changed, {@code class}, {@code inner}, {@code field} or {@code method}
+     * @param name  The member or inner class name, {@code null} for the class itself
+     * @param desc  The member descriptor, {@code null} for classes
+     * @throws IllegalStateException If writing the audit log has failed
+     */
+    void record(final String owner, final String kind, final String name, final String desc, final int from, final int to) {
+        if (error != null)
+            throw new IllegalStateException("Writing audit log failed", error);
+        put(new Record(owner, kind, name, desc, from, to));
+    }
+
+    private void put(final Record record) {
+        while (true) {
+            final long position = tail.get();
+            final int index = (int)(position & MASK);
+            final long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, record);
+                    sequences.set(index, position + 1);
+                    return;
+                }
+            } else if (sequence < position) {
+                // Full, the writer hasn't taken the record put here one lap ago yet
+                LockSupport.parkNanos(BACKOFF_NANOS);
+            }
+            // Otherwise another producer claimed this position first, try the next one
+        }
+    }
+
+    /**
+     * @return The next record, or {@code null} if none is ready yet
+     */
+    private Record take() {
+        final int index = (int)(head & MASK);
+        if (sequences.get(index) != head + 1)
+            return null;
+        final Record record = slots.get(index);
+        slots.lazySet(index, null);
+        sequences.set(index, head + CAPACITY);
+        head++;
+        return record;
+    }
+
+    private void drain() {
+        final StringBuilder line = new StringBuilder(256);
+        Record record;
+        while ((record = take()) != END) {
+            if (record == null) {
+                LockSupport.parkNanos(BACKOFF_NANOS);
+                continue;
+            }
+            // Keep taking records after a failure, so producers never wait on a writer that is gone
+            if (error != null)
+                continue;
+            try {
+                line.setLength(0);
+                record.append(line);
+                writer.append(line);
+            } catch (Throwable t) {
+                error = t;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            put(END);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing audit log", e);
+        } finally {
+            writer.close();
+        }
+        if (error != null)
+            throw new IOException("Writing audit log", error);
+    }
+
+    private static final class Record {
+        private final String owner;
+        private final String kind;
+        private final String name;
+        private final String desc;
+        private final int from;
+        private final int to;
+
+        private Record(final String owner, final String kind, final String name, final String desc, final int from, final int to) {
+            this.owner = owner;
+            this.kind = kind;
+            this.name = name;
+            this.desc = desc;
+            this.from = from;
+            this.to = to;
+        }
+
+        private void append(final StringBuilder out) {
+            out.append("{\"class\":");
+            string(out, owner);
+            out.append(",\"kind\":");
+            string(out, kind);
+            if (name != null) {
+                out.append(",\"name\":");
+                string(out, name);
+            }
+            if (desc != null) {
+                out.append(",\"desc\":");
+                string(out, desc);
+            }
+            out.append(",\"from\":");
+            access(out, from);
+            out.append(",\"to\":");
+            access(out, to);
+            out.append("}\n");
+        }
+
+        private static void access(final StringBuilder out, final int access) {
+            out.append('"');
+            if ((access & Opcodes.ACC_PUBLIC) != 0)
+                out.append("public");
+            else if ((access & Opcodes.ACC_PROTECTED) != 0)
+                out.append("protected");
+            else if ((access & Opcodes.ACC_PRIVATE) != 0)
+                out.append("private");
+            else
+                out.append("default");
+            if ((access & Opcodes.ACC_FINAL) != 0)
+                out.append(" final");
+            out.append('"');
+        }
+
+        // Names come from class files, so they can hold anything JSON needs escaped
+        private static void string(final StringBuilder out, final String value) {
+            out.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c == '"' || c == '\\')
+                    out.append('\\').append(c);
+                else if (c < 0x20)
+                    out.append(String.format("\\u%04x", (int)c));
+                else
+                    out.append(c);
+            }
+            out.append('"');
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformer;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InnerClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Set;
+
+/**
+ * A rule set compiled to bytecode by {@link RulesCompiler}. The generated subclass finds the rules for a class and
+ * member by switching on the hash codes of their names, and applies each rule as constant bit operations on the
+ * access flags, so applying rules involves no maps or virtual {@link Target} calls.
+ */
+public abstract class CompiledRules {
+    protected CompiledRules() { }
+
+    /**
+     * @return The index of the rules for the class, or -1 if no rule targets it
+     */
+    protected abstract int index(String className);
+
+    protected abstract int classAccess(int index, int access);
+
+    protected abstract int innerClassAccess(int index, String innerName, int access);
+
+    protected abstract int fieldAccess(int index, String name, int access);
+
+    protected abstract int methodAccess(int index, String name, String desc, int access);
+
+    /**
+     * Applies the rules for a class, the same way {@link AccessTransformerEngine#transform} applies them from the
+     * rule list.
+     *
+     * @return Whether any rule targets the class
+     */
+    final boolean apply(final String className, final ClassNode node, final Set<String> privateChanged) {
+        final int index = index(className);
+        if (index < 0)
+            return false;
+
+        node.access = classAccess(index, node.access);
+        for (InnerClassNode inner : node.innerClasses) {
+            if (inner.name.equals(node.name))
+                inner.access = classAccess(index, inner.access);
+            inner.access = innerClassAccess(index, inner.name, inner.access);
+        }
+        for (FieldNode fn : node.fields)
+            fn.access = fieldAccess(index, fn.name, fn.access);
+        for (MethodNode mn : node.methods) {
+            final boolean wasPrivate = (mn.access & Opcodes.ACC_PRIVATE) == Opcodes.ACC_PRIVATE;
+            mn.access = methodAccess(index, mn.name, mn.desc, mn.access);
+            if (wasPrivate && !"<init>".equals(mn.name) && (mn.access & Opcodes.ACC_PRIVATE) != Opcodes.ACC_PRIVATE)
+                privateChanged.add(mn.name + mn.desc);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+final class Hashes {
+    private Hashes() {}
+
+    static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required to be supported by every JVM", e);
+        }
+    }
+
+    static String sha1(final Path path) throws IOException {
+        final MessageDigest digest = sha1();
+        try (InputStream is = Files.newInputStream(path)) {
+            drain(is, digest);
+        }
+        return toHex(digest.digest());
+    }
+
+    static void drain(final InputStream is, final MessageDigest digest) throws IOException {
+        final byte[] buf = new byte[8192];
+        int read;
+        while ((read = is.read(buf)) != -1)
+            digest.update(buf, 0, read);
+    }
+
+    static String toHex(final byte[] bytes) {
+        final StringBuilder ret = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+            ret.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return ret.toString();
+    }
+}
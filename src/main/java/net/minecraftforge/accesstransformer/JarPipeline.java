@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.UnaryOperator;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams JAR entries through separate read, transform and write stages.
+ * <p>
+ * A single reader thread pulls entries from the {@link Source}, class files are transformed on a worker pool,
+ * and the calling thread writes the results in the original order. The number of uncompressed bytes held by
+ * entries that have been read but not yet written is capped, so the reader blocks instead of decoding more
+ * classes than the heap can hold.
+ */
+class JarPipeline {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Marker AXFORM_MARKER = MarkerManager.getMarker("AXFORM");
+    // Same fixed timestamp Gradle uses for reproducible archives, local time so the DOS time is identical in every timezone
+    static final long CONSTANT_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).getTimeInMillis();
+
+    interface Source extends Closeable {
+        /** @return The next entry, or {@code null} once the source is exhausted */
+        ZipEntry next() throws IOException;
+
+        /** Reads the data of the entry last returned by {@link #next()}. */
+        byte[] read(ZipEntry entry) throws IOException;
+    }
+
+    private final UnaryOperator<byte[]> classTransformer;
+    private final int maxInflightBytes;
+    private final int threads;
+
+    /**
+     * @param classTransformer Transforms class bytes, returning {@code null} if the class is unchanged
+     * @param maxInflightBytes The maximum number of uncompressed bytes read but not yet written
+     * @param threads          The number of threads to transform classes on
+     */
+    JarPipeline(final UnaryOperator<byte[]> classTransformer, final long maxInflightBytes, final int threads) {
+        this.classTransformer = classTransformer;
+        this.maxInflightBytes = (int)Math.max(1, Math.min(Integer.MAX_VALUE, maxInflightBytes));
+        this.threads = Math.max(1, threads);
+    }
+
+    void run(final Source source, final ZipOutputStream out, final boolean deterministic) throws IOException {
+        final Semaphore budget = new Semaphore(maxInflightBytes);
+        final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(1024);
+        final ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            final Thread thread = new Thread(r, "AT-Transform");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final Thread reader = new Thread(() -> {
+            try {
+                ZipEntry entry;
+                while ((entry = source.next()) != null) {
+                    int permits = entry.getSize() < 0 ? 0 : permits(entry.getSize());
+                    budget.acquire(permits);
+                    final byte[] data = source.read(entry);
+                    if (entry.getSize() < 0) {
+                        // Size wasn't in the local header, so we can only account for it after the fact
+                        permits = permits(data.length);
+                        budget.acquire(permits);
+                    }
+
+                    final CompletableFuture<byte[]> result;
+                    if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                        result = CompletableFuture.supplyAsync(() -> {
+                            final byte[] transformed = classTransformer.apply(data);
+                            return transformed != null ? transformed : data;
+                        }, workers);
+                    } else {
+                        result = CompletableFuture.completedFuture(data);
+                    }
+                    queue.put(new Pending(entry, result, permits, null));
+                }
+                queue.put(new Pending(null, null, 0, null));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                try {
+                    queue.put(new Pending(null, null, 0, t));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "AT-Reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            final Set<String> seen = new HashSet<>();
+            while (true) {
+                final Pending pending = queue.take();
+                if (pending.error != null)
+                    sneak(pending.error);
+                if (pending.entry == null)
+                    break;
+
+                byte[] data;
+                try {
+                    data = pending.data.get();
+                } catch (ExecutionException e) {
+                    LOGGER.error(AXFORM_MARKER,"Transforming {}", pending.entry.getName(), e.getCause());
+                    data = sneak(e.getCause());
+                }
+
+                if (seen.add(pending.entry.getName())) {
+                    write(out, pending.entry, data, deterministic);
+                } else {
+                    LOGGER.warn(AXFORM_MARKER,"Skipping duplicate entry {}", pending.entry.getName());
+                }
+                budget.release(pending.permits);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing JAR", e);
+        } finally {
+            reader.interrupt();
+            workers.shutdownNow();
+        }
+    }
+
+    private int permits(final long size) {
+        return (int)Math.min(size, maxInflightBytes);
+    }
+
+    static void write(final ZipOutputStream out, final ZipEntry entry, final byte[] data, final boolean deterministic) throws IOException {
+        final ZipEntry outEntry = new ZipEntry(entry.getName());
+        if (deterministic) {
+            outEntry.setTime(CONSTANT_TIME);
+        } else {
+            outEntry.setTime(entry.getTime());
+            outEntry.setComment(entry.getComment());
+        }
+        out.putNextEntry(outEntry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    static byte[] readAllBytes(final InputStream is, final long size) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 ? (int)size : 8192);
+        final byte[] buf = new byte[8192];
+        int read;
+        while ((read = is.read(buf)) != -1)
+            out.write(buf, 0, read);
+        return out.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R, E extends Throwable> R sneak(Throwable t) throws E {
+        throw (E) t;
+    }
+
+    private static final class Pending {
+        private final ZipEntry entry;
+        private final CompletableFuture<byte[]> data;
+        private final int permits;
+        private final Throwable error;
+
+        private Pending(final ZipEntry entry, final CompletableFuture<byte[]> data, final int permits, final Throwable error) {
+            this.entry = entry;
+            this.data = data;
+            this.permits = permits;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformer;
+
+import org.objectweb.asm.*;
+import org.objectweb.asm.tree.*;
+
+import java.util.*;
+
+/**
+ * Targets every class in a package and its subpackages, along with all of their fields and methods.
+ */
+public class PackageTarget extends Target<ClassNode> {
+    public PackageTarget(String packageName) {
+        super(packageName);
+    }
+
+    /**
+     * @return Whether the class with the given internal name is in the package or one of its subpackages
+     */
+    public boolean contains(final String className) {
+        final String pkg = getClassName();
+        return className.length() > pkg.length() && className.charAt(pkg.length()) == '/' && className.startsWith(pkg);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toString(getClassName()) + " PACKAGE";
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof PackageTarget)) return false;
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getClassName(), getType(), "PACKAGE");
+    }
+
+    @Override
+    public String targetName() {
+        return "**";
+    }
+
+    @Override
+    public void apply(final ClassNode node, final AccessTransformer.Modifier targetAccess, final AccessTransformer.FinalState targetFinalState, Set<String> privateChanged) {
+        node.access = targetAccess.mergeWith(node.access);
+        node.access = targetFinalState.mergeWith(node.access);
+
+        for (InnerClassNode inner : node.innerClasses) {
+            if (contains(inner.name)) {
+                inner.access = targetAccess.mergeWith(inner.access);
+                inner.access = targetFinalState.mergeWith(inner.access);
+            }
+        }
+        for (FieldNode fn : node.fields) {
+            fn.access = targetAccess.mergeWith(fn.access);
+            fn.access = targetFinalState.mergeWith(fn.access);
+        }
+        for (MethodNode mn : node.methods) {
+            boolean wasPrivate = (mn.access & Opcodes.ACC_PRIVATE) == Opcodes.ACC_PRIVATE;
+            mn.access = targetAccess.mergeWith(mn.access);
+            mn.access = targetFinalState.mergeWith(mn.access);
+            if (wasPrivate && !"<init>".equals(mn.name) && (mn.access & Opcodes.ACC_PRIVATE) != Opcodes.ACC_PRIVATE) {
+                privateChanged.add(mn.name+mn.desc);
+            }
+        }
+    }
+}
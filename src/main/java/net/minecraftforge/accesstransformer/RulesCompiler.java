@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.accesstransformer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.MarkerManager;
+import org.objectweb.asm.ClassTooLargeException;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodTooLargeException;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a {@link CompiledRules} subclass for a fixed rule set.
+ * <p>
+ * The rules of each class get their own static methods, so no single method grows with the whole rule set. Each
+ * rule's {@link AccessTransformer.Modifier} is applied as a lookup in a constant packing the result for every
+ * possible set of visibility bits, and its {@link AccessTransformer.FinalState} as a constant mask.
+ */
+final class RulesCompiler {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final Marker AXFORM_MARKER = MarkerManager.getMarker("AXFORM");
+    private static final String SUPER = Type.getInternalName(CompiledRules.class);
+    private static final String STRING = Type.getInternalName(String.class);
+    private static final String METHOD_WILDCARD = "*" + TargetType.METHOD + "*";
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    private RulesCompiler() { }
+
+    /**
+     * @return The compiled rules, or {@code null} if they are too many to fit in a class
+     */
+    static CompiledRules compile(final Map<String, List<AccessTransformer>> accessTransformers) {
+        final List<ClassRules> classes = new ArrayList<>();
+        accessTransformers.forEach((name, ats) -> classes.add(new ClassRules(name, classes.size(), ats)));
+
+        final String name = "net/minecraftforge/accesstransformer/compiled/Rules" + COUNT.incrementAndGet();
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                // Only ever asked about the arguments, which never change type
+                return "java/lang/Object";
+            }
+        };
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, name, null, SUPER, null);
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, SUPER, "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        index(cw, classes);
+        classAccess(cw, classes);
+        dispatch(cw, name, classes, "innerClassAccess", "(ILjava/lang/String;I)I", "i", c -> !c.inner.isEmpty());
+        dispatch(cw, name, classes, "fieldAccess", "(ILjava/lang/String;I)I", "f", c -> !c.fields.isEmpty() || c.fieldWildcard != null);
+        dispatch(cw, name, classes, "methodAccess", "(ILjava/lang/String;Ljava/lang/String;I)I", "m", c -> !c.methods.isEmpty() || c.methodWildcard != null);
+        for (ClassRules cls : classes) {
+            if (!cls.inner.isEmpty())
+                members(cw, "i" + cls.index, false, null, cls.inner);
+            if (!cls.fields.isEmpty() || cls.fieldWildcard != null)
+                members(cw, "f" + cls.index, false, cls.fieldWildcard, cls.fields);
+            if (!cls.methods.isEmpty() || cls.methodWildcard != null)
+                members(cw, "m" + cls.index, true, cls.methodWildcard, cls.methods);
+        }
+        cw.visitEnd();
+
+        final byte[] data;
+        try {
+            data = cw.toByteArray();
+        } catch (ClassTooLargeException | MethodTooLargeException e) {
+            LOGGER.warn(AXFORM_MARKER, "Too many access transformers to compile, applying them from the rule list", e);
+            return null;
+        }
+
+        try {
+            return (CompiledRules)new Loader().define(name.replace('/', '.'), data).getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to load compiled access transformers", e);
+        }
+    }
+
+    /**
+     * Switches on the hash code of the class name, then compares the names sharing it.
+     */
+    private static void index(final ClassWriter cw, final List<ClassRules> classes) {
+        final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PROTECTED, "index", "(Ljava/lang/String;)I", null, null);
+        mv.visitCode();
+        final Label miss = new Label();
+        final TreeMap<Integer, List<ClassRules>> byHash = new TreeMap<>();
+        for (ClassRules cls : classes)
+            byHash.computeIfAbsent(cls.name.hashCode(), k -> new ArrayList<>()).add(cls);
+
+        final Label[] labels = labels(byHash.size());
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, STRING, "hashCode", "()I", false);
+        mv.visitLookupSwitchInsn(miss, keys(byHash), labels);
+        int i = 0;
+        for (List<ClassRules> bucket : byHash.values()) {
+            mv.visitLabel(labels[i++]);
+            for (ClassRules cls : bucket) {
+                final Label next = new Label();
+                equals(mv, 1, cls.name, next);
+                push(mv, cls.index);
+                mv.visitInsn(Opcodes.IRETURN);
+                mv.visitLabel(next);
+            }
+            mv.visitJumpInsn(Opcodes.GOTO, miss);
+        }
+        mv.visitLabel(miss);
+        mv.visitInsn(Opcodes.ICONST_M1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void classAccess(final ClassWriter cw, final List<ClassRules> classes) {
+        final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PROTECTED, "classAccess", "(II)I", null, null);
+        mv.visitCode();
+        final Label done = new Label();
+        final Label[] labels = new Label[classes.size()];
+        for (ClassRules cls : classes)
+            labels[cls.index] = cls.self == null ? done : new Label();
+
+        if (!classes.isEmpty()) {
+            mv.visitVarInsn(Opcodes.ILOAD, 1);
+            mv.visitTableSwitchInsn(0, classes.size() - 1, done, labels);
+            for (ClassRules cls : classes) {
+                if (cls.self == null)
+                    continue;
+                mv.visitLabel(labels[cls.index]);
+                apply(mv, 2, cls.self);
+                mv.visitJumpInsn(Opcodes.GOTO, done);
+            }
+        }
+        mv.visitLabel(done);
+        mv.visitVarInsn(Opcodes.ILOAD, 2);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private interface Filter {
+        boolean test(ClassRules cls);
+    }
+
+    /**
+     * Switches on the class index, calling the method for that class' members. The index is always the first
+     * argument and the access flags the last, so the rest are passed along as is.
+     */
+    private static void dispatch(final ClassWriter cw, final String owner, final List<ClassRules> classes, final String method, final String desc, final String prefix, final Filter filter) {
+        final Type[] args = Type.getArgumentTypes(desc);
+        final int access = args.length;
+        final String memberDesc = desc.replace("(I", "(");
+
+        final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PROTECTED, method, desc, null, null);
+        mv.visitCode();
+        final Label done = new Label();
+        final Label[] labels = new Label[classes.size()];
+        boolean any = false;
+        for (ClassRules cls : classes) {
+            final boolean handled = filter.test(cls);
+            labels[cls.index] = handled ? new Label() : done;
+            any |= handled;
+        }
+
+        if (any) {
+            mv.visitVarInsn(Opcodes.ILOAD, 1);
+            mv.visitTableSwitchInsn(0, classes.size() - 1, done, labels);
+            for (ClassRules cls : classes) {
+                if (labels[cls.index] == done)
+                    continue;
+                mv.visitLabel(labels[cls.index]);
+                for (int i = 2; i <= access; i++)
+                    mv.visitVarInsn(args[i - 1].getOpcode(Opcodes.ILOAD), i);
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, owner, prefix + cls.index, memberDesc, false);
+                mv.visitInsn(Opcodes.IRETURN);
+            }
+        }
+        mv.visitLabel(done);
+        mv.visitVarInsn(Opcodes.ILOAD, access);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Generates the method for one class' members, taking the name, the descriptor for methods, and the access
+     * flags. The wildcard applies to every member first, then the rule for the member itself, like the rule list.
+     */
+    private static void members(final ClassWriter cw, final String name, final boolean methods, final AccessTransformer wildcard, final Map<String, AccessTransformer> members) {
+        final int access = methods ? 2 : 1;
+        final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, name, methods ? "(Ljava/lang/String;Ljava/lang/String;I)I" : "(Ljava/lang/String;I)I", null, null);
+        mv.visitCode();
+        if (wildcard != null)
+            apply(mv, access, wildcard);
+
+        final Label done = new Label();
+        if (!members.isEmpty()) {
+            final TreeMap<Integer, List<String>> byHash = new TreeMap<>();
+            for (String key : members.keySet())
+                byHash.computeIfAbsent(memberName(key, methods).hashCode(), k -> new ArrayList<>()).add(key);
+
+            final Label[] labels = labels(byHash.size());
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, STRING, "hashCode", "()I", false);
+            mv.visitLookupSwitchInsn(done, keys(byHash), labels);
+            int i = 0;
+            for (List<String> bucket : byHash.values()) {
+                mv.visitLabel(labels[i++]);
+                for (String key : bucket) {
+                    final Label next = new Label();
+                    equals(mv, 0, memberName(key, methods), next);
+                    if (methods)
+                        equals(mv, 1, key.substring(key.indexOf('(')), next);
+                    apply(mv, access, members.get(key));
+                    mv.visitJumpInsn(Opcodes.GOTO, done);
+                    mv.visitLabel(next);
+                }
+                mv.visitJumpInsn(Opcodes.GOTO, done);
+            }
+        }
+        mv.visitLabel(done);
+        mv.visitVarInsn(Opcodes.ILOAD, access);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static String memberName(final String key, final boolean method) {
+        return method ? key.substring(0, key.indexOf('(')) : key;
+    }
+
+    /**
+     * Jumps to {@code otherwise} unless the string in {@code local} equals {@code value}.
+     */
+    private static void equals(final MethodVisitor mv, final int local, final String value, final Label otherwise) {
+        mv.visitVarInsn(Opcodes.ALOAD, local);
+        mv.visitLdcInsn(value);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, STRING, "equals", "(Ljava/lang/Object;)Z", false);
+        mv.visitJumpInsn(Opcodes.IFEQ, otherwise);
+    }
+
+    /**
+     * Applies a rule to the access flags in {@code local}, exactly like {@link AccessTransformer.Modifier#mergeWith}
+     * followed by {@link AccessTransformer.FinalState#mergeWith}.
+     */
+    private static void apply(final MethodVisitor mv, final int local, final AccessTransformer at) {
+        // The new visibility for each of the 8 possible visibility bits, 3 bits each
+        int visibility = 0;
+        for (int bits = 0; bits < 8; bits++)
+            visibility |= (at.getTargetAccess().mergeWith(bits) & 7) << (bits * 3);
+        final int set = at.getTargetFinalState().mergeWith(0);
+        final int keep = at.getTargetFinalState().mergeWith(-1);
+
+        // (access & ~7) | ((visibility >>> ((access & 7) * 3)) & 7)
+        mv.visitVarInsn(Opcodes.ILOAD, local);
+        push(mv, ~7);
+        mv.visitInsn(Opcodes.IAND);
+        push(mv, visibility);
+        mv.visitVarInsn(Opcodes.ILOAD, local);
+        push(mv, 7);
+        mv.visitInsn(Opcodes.IAND);
+        push(mv, 3);
+        mv.visitInsn(Opcodes.IMUL);
+        mv.visitInsn(Opcodes.IUSHR);
+        push(mv, 7);
+        mv.visitInsn(Opcodes.IAND);
+        mv.visitInsn(Opcodes.IOR);
+        if (keep != -1) {
+            push(mv, keep);
+            mv.visitInsn(Opcodes.IAND);
+        }
+        if (set != 0) {
+            push(mv, set);
+            mv.visitInsn(Opcodes.IOR);
+        }
+        mv.visitVarInsn(Opcodes.ISTORE, local);
+    }
+
+    private static void push(final MethodVisitor mv, final int value) {
+        if (value >= -1 && value <= 5)
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        else
+            mv.visitLdcInsn(value);
+    }
+
+    private static Label[] labels(final int size) {
+        final Label[] ret = new Label[size];
+        for (int i = 0; i < size; i++)
+            ret[i] = new Label();
+        return ret;
+    }
+
+    private static int[] keys(final TreeMap<Integer, ?> byHash) {
+        return byHash.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * The rules of a single class, sorted by what they target.
+     */
+    private static final class ClassRules {
+        private final String name;
+        private final int index;
+        private AccessTransformer self;
+        private AccessTransformer fieldWildcard;
+        private AccessTransformer methodWildcard;
+        private final Map<String, AccessTransformer> inner = new HashMap<>();
+        private final Map<String, AccessTransformer> fields = new HashMap<>();
+        private final Map<String, AccessTransformer> methods = new HashMap<>();
+
+        private ClassRules(final String name, final int index, final List<AccessTransformer> ats) {
+            this.name = name;
+            this.index = index;
+            for (AccessTransformer at : ats) {
+                final Target<?> target = at.getTarget();
+                if (target instanceof ClassTarget)
+                    this.self = at;
+                else if (target instanceof InnerClassTarget)
+                    this.inner.put(target.targetName(), at);
+                else if (target instanceof WildcardTarget && METHOD_WILDCARD.equals(target.targetName()))
+                    this.methodWildcard = at;
+                else if (target instanceof WildcardTarget)
+                    this.fieldWildcard = at;
+                else if (target instanceof FieldTarget)
+                    this.fields.put(target.targetName(), at);
+                else if (target instanceof MethodTarget)
+                    this.methods.put(target.targetName(), at);
+            }
+        }
+    }
+
+    private static final class Loader extends ClassLoader {
+        private Loader() {
+            super(CompiledRules.class.getClassLoader());
+        }
+
+        private Class<?> define(final String name, final byte[] data) {
+            return defineClass(name, data, 0, data.length);
+        }
+    }
+}
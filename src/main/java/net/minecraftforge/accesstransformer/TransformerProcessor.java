@@ -12,33 +12,93 @@ import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.appender.FileAppender;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.logging.log4j.simple.SimpleLoggerContextFactory;
 import org.objectweb.asm.*;
 import org.objectweb.asm.tree.*;
 
+import net.minecraftforge.accesstransformer.parser.AccessTransformerList;
+
 import java.io.*;
-import java.net.*;
+import java.nio.charset.*;
 import java.nio.file.*;
+import java.security.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.stream.*;
+import java.util.zip.*;
 
 public class TransformerProcessor {
-    static {
-        Configurator.initialize("", "atlog4j2.xml");
-    }
-    private static final Logger LOGGER = LogManager.getLogger();
+    // Set up once the options are parsed, see configureLogging
+    private static Logger LOGGER;
+    // The per run log file when embedded, see configureLogging
+    private static Appender embeddedLogFile;
+    // Embedded runs usually come in batches with the same rules, so keep the last few rule sets parsed
+    private static final Map<String, AccessTransformerList> RULES_CACHE = new LinkedHashMap<String, AccessTransformerList>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AccessTransformerList> eldest) {
+            return size() > 8;
+        }
+    };
+    // Counted for --statsFile, reset at the start of every run as runs never overlap
+    private static final LongAdder CLASSES_SCANNED = new LongAdder();
+    private static final LongAdder CLASSES_CHANGED = new LongAdder();
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+    // Sent by server mode once it is ready for jobs, see serve
+    private static final String SERVER_READY = "READY 1";
     private static final Marker AXFORM_MARKER = MarkerManager.getMarker("AXFORM");
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final String DIRECTORY_INDEX = ".accesstransformer.index";
+    // Records the rules and input a JAR was transformed from, so it can be recognised as current without reading every entry
+    private static final String FINGERPRINT = "META-INF/accesstransformer.fingerprint";
+    private static volatile String version;
+    // Keep the manifest first, like the JDK's jar tool, so JarInputStream can still find it
+    private static final Comparator<ZipEntry> ENTRY_ORDER = Comparator.<ZipEntry>comparingInt(e -> "META-INF/".equals(e.getName()) ? 0 : MANIFEST.equals(e.getName()) ? 1 : 2).thenComparing(ZipEntry::getName);
 
     public static void main(String... args) {
+        execute(false, args);
+    }
+
+    /**
+     * Runs the processor with the same arguments as {@link #main(String...)}, for hosts such as the Gradle plugin
+     * that call it many times from one JVM, typically from an isolated class loader.
+     * <p>
+     * Rules from earlier runs are replaced, recently used rule files are only parsed again if their contents changed.
+     * Nothing is logged to the console, only to the file given by {@code --logFile}, and invalid arguments are
+     * thrown instead of printing the usage.
+     */
+    public static void run(String... args) {
+        execute(true, args);
+    }
+
+    private static void execute(final boolean embedded, String... args) {
         final OptionParser optionParser = new OptionParser();
-        final ArgumentAcceptingOptionSpec<Path> inputJar = optionParser.accepts("inJar", "Input JAR file to apply transformation to").withRequiredArg().withValuesConvertedBy(new PathConverter(PathProperties.FILE_EXISTING)).required();
-        final ArgumentAcceptingOptionSpec<Path> atFiles = optionParser.acceptsAll(list("atfile", "atFile"), "Access Transformer File").withRequiredArg().withValuesConvertedBy(new PathConverter(PathProperties.FILE_EXISTING)).required();
-        final ArgumentAcceptingOptionSpec<Path> outputJar = optionParser.accepts("outJar", "Output JAR file").withRequiredArg().withValuesConvertedBy(new PathConverter());
+        // Declared before the options that refer to it, jopt-simple only looks them up when they are declared
+        final OptionSpec<Void> server = optionParser.accepts("server", "Stay running and read jobs from standard input, one line of NUL separated arguments each");
+        final ArgumentAcceptingOptionSpec<Path> inputDir = optionParser.accepts("inDir", "Input directory of class files to apply transformation to").withRequiredArg().withValuesConvertedBy(new PathConverter(PathProperties.DIRECTORY_EXISTING));
+        final ArgumentAcceptingOptionSpec<Path> outputDir = optionParser.accepts("outDir", "Output directory, the input directory is transformed in place if not specified").availableIf("inDir").withRequiredArg().withValuesConvertedBy(new PathConverter());
+        final ArgumentAcceptingOptionSpec<Path> indexFile = optionParser.accepts("indexFile", "File recording which files were transformed with which rules, next to the output directory if not specified").availableIf("inDir").withRequiredArg().withValuesConvertedBy(new PathConverter());
+        final OptionSpec<Void> stdin = optionParser.accepts("stdin", "Read the input JAR from standard input, entries are processed in the order they arrive").availableUnless("inDir");
+        final ArgumentAcceptingOptionSpec<Path> inputJar = optionParser.accepts("inJar", "Input JAR file to apply transformation to").requiredUnless("inDir", "stdin", "server").availableUnless("stdin").withRequiredArg().withValuesConvertedBy(new PathConverter(PathProperties.FILE_EXISTING));
+        final ArgumentAcceptingOptionSpec<Path> atFiles = optionParser.acceptsAll(list("atfile", "atFile"), "Access Transformer File").requiredUnless("server").withRequiredArg().withValuesConvertedBy(new PathConverter(PathProperties.FILE_EXISTING));
+        final OptionSpec<Void> stdout = optionParser.accepts("stdout", "Write the output JAR to standard output, the default when reading from standard input").availableUnless("inDir");
+        final ArgumentAcceptingOptionSpec<Path> outputJar = optionParser.accepts("outJar", "Output JAR file").availableUnless("stdout").withRequiredArg().withValuesConvertedBy(new PathConverter());
         final ArgumentAcceptingOptionSpec<String> logFilePath = optionParser.accepts("logFile", "Log file for logging").withRequiredArg();
+        final OptionSpec<Void> debug = optionParser.accepts("debug", "Print debug logging to the console, ignored when a log file is used as that always receives it");
+        final ArgumentAcceptingOptionSpec<Path> statsFilePath = optionParser.accepts("statsFile", "Write the time spent and amount of work done as a JSON object to this file").withRequiredArg().withValuesConvertedBy(new PathConverter());
+        final ArgumentAcceptingOptionSpec<Path> auditFilePath = optionParser.accepts("auditFile", "Write every access change as a JSON line to this file, the log file then stays at info level").withRequiredArg().withValuesConvertedBy(new PathConverter());
+        final OptionSpec<Void> deterministic = optionParser.accepts("deterministic", "Write a reproducible output JAR, with sorted entries and fixed timestamps");
+        final ArgumentAcceptingOptionSpec<Long> maxInflightBytes = optionParser.acceptsAll(list("maxInflightBytes", "max-inflight-bytes"), "Maximum uncompressed bytes of JAR entries held in memory at once").withRequiredArg().ofType(Long.class).defaultsTo(Runtime.getRuntime().maxMemory() / 4);
+        final OptionSpec<Void> skipIfCurrent = optionParser.acceptsAll(list("skipIfCurrent", "skip-if-current"), "Leave the output JAR untouched if it was already transformed from the same input and rules, otherwise record them in it").availableUnless("inDir", "stdin", "stdout");
+        final OptionSpec<Void> compiled = optionParser.accepts("compiled", "Apply the rules through a class generated from them, faster when transforming many classes");
+        final ArgumentAcceptingOptionSpec<Integer> threads = optionParser.accepts("threads", "Number of threads to transform classes on").withRequiredArg().ofType(Integer.class).defaultsTo(Runtime.getRuntime().availableProcessors());
         final OptionSpec<Void> help = optionParser.accepts("help").forHelp();
 
         final OptionSet optionSet;
-        Path inputJarPath;
-        Path outputJarPath;
+        final boolean directory;
+        Path inputPath;
+        Path outputPath;
+        Path indexPath = null;
         List<Path> atFilePaths;
         try {
             optionSet = optionParser.parse(args);
@@ -46,34 +106,42 @@ public class TransformerProcessor {
                 optionParser.printHelpOn(System.out);
                 return;
             }
+            if (embedded && (optionSet.has(server) || optionSet.has(stdin) || optionSet.has(stdout)))
+                throw new IllegalArgumentException("Standard input and output belong to the host when embedded");
+            if (optionSet.has(server)) {
+                serve();
+                return;
+            }
 
-            final String logFile = logFilePath.value(optionSet);
-            if (logFile != null) {
-                // configure a custom logfile with debug level logging
-                final LoggerContext logcontext = LoggerContext.getContext(false);
-                final Configuration configuration = logcontext.getConfiguration();
-                Appender fileAppender = FileAppender.newBuilder().
-                        setName("logfile").
-                        withFileName(logFile).
-                        setLayout(configuration.getAppender("SysErr").getLayout()).
-                        build();
-                fileAppender.start();
-                configuration.addAppender(fileAppender);
-                configuration.getRootLogger().addAppender(fileAppender, Level.DEBUG, null);
-                logcontext.updateLoggers();
-                LOGGER.info(AXFORM_MARKER,"Writing debug log file {}", logFile);
-            }
-            inputJarPath = inputJar.value(optionSet).toAbsolutePath();
-            final String s = inputJarPath.getFileName().toString();
-            outputJarPath = outputJar.value(optionSet);
-            if (outputJarPath == null) {
-                outputJarPath = inputJarPath.resolveSibling(s.substring(0,s.length()-4)+"-new.jar");
+            configureLogging(logFilePath.value(optionSet), optionSet.has(debug), optionSet.has(auditFilePath), embedded);
+            directory = optionSet.has(inputDir);
+            if (directory) {
+                inputPath = inputDir.value(optionSet).toAbsolutePath();
+                outputPath = optionSet.has(outputDir) ? outputDir.value(optionSet).toAbsolutePath() : inputPath;
+                // Anything in the output directory ends up on the consumer's classpath, so the index is kept outside of it
+                if (optionSet.has(indexFile))
+                    indexPath = indexFile.value(optionSet).toAbsolutePath();
+                else if (outputPath.getParent() != null)
+                    indexPath = outputPath.resolveSibling(outputPath.getFileName() + DIRECTORY_INDEX);
+                else
+                    throw new IllegalArgumentException("--indexFile is required when the output directory is a root");
             } else {
-                outputJarPath = outputJarPath.toAbsolutePath();
+                // A null path means standard input or output
+                inputPath = optionSet.has(stdin) ? null : inputJar.value(optionSet).toAbsolutePath();
+                outputPath = outputJar.value(optionSet);
+                if (outputPath != null) {
+                    outputPath = outputPath.toAbsolutePath();
+                } else if (inputPath != null && !optionSet.has(stdout)) {
+                    final String s = inputPath.getFileName().toString();
+                    outputPath = inputPath.resolveSibling(s.substring(0,s.length()-4)+"-new.jar");
+                }
             }
 
             atFilePaths = atFiles.values(optionSet).stream().map(Path::toAbsolutePath).collect(Collectors.toList());
         } catch (Exception e) {
+            if (embedded)
+                throw new IllegalArgumentException("Invalid arguments " + Arrays.asList(args), e);
+            configureLogging(null, false, false, false);
             LOGGER.error(AXFORM_MARKER,"Option Parsing Error", e);
             try {
                 optionParser.printHelpOn(System.out);
@@ -83,33 +151,269 @@ public class TransformerProcessor {
         }
         LOGGER.info(AXFORM_MARKER, "Access Transformer processor running version {}", TransformerProcessor.class.getPackage().getImplementationVersion());
         LOGGER.info(AXFORM_MARKER, "Command line arguments {}", Arrays.asList(args));
-        LOGGER.info(AXFORM_MARKER,"Reading from {}", inputJarPath);
-        LOGGER.info(AXFORM_MARKER,"Writing to {}", outputJarPath);
+        LOGGER.info(AXFORM_MARKER,"Reading from {}", inputPath == null ? "standard input" : inputPath);
+        LOGGER.info(AXFORM_MARKER,"Writing to {}", outputPath == null ? "standard output" : outputPath);
         atFilePaths.forEach(path -> LOGGER.info(AXFORM_MARKER,"Transformer file {}", path));
+        CLASSES_SCANNED.reset();
+        CLASSES_CHANGED.reset();
+        BYTES_WRITTEN.reset();
+        final long parseStart = System.nanoTime();
+        if (embedded)
+            loadCachedTransformers(atFilePaths);
+        else
+            loadTransformers(atFilePaths);
+        final long parseNanos = System.nanoTime() - parseStart;
+        AccessTransformerEngine.INSTANCE.setCompiled(optionSet.has(compiled));
+
+        AuditLog audit = null;
+        if (optionSet.has(auditFilePath)) {
+            final Path auditFile = auditFilePath.value(optionSet).toAbsolutePath();
+            try {
+                audit = new AuditLog(auditFile);
+                LOGGER.info(AXFORM_MARKER,"Writing audit log {}", auditFile);
+            } catch (IOException e) {
+                LOGGER.error(AXFORM_MARKER,"Opening audit log {}", auditFile, e);
+                sneak(e);
+            }
+        }
+        final long processStart = System.nanoTime();
         try {
-            LOGGER.warn("Found existing output jar {}, overwriting", outputJarPath);
-            Files.deleteIfExists(outputJarPath);
+            process(optionSet.has(skipIfCurrent), optionSet.has(deterministic), directory, inputPath, outputPath, indexPath, maxInflightBytes.value(optionSet), threads.value(optionSet), audit);
+            if (optionSet.has(statsFilePath)) {
+                // Jars are written through a stream, their size on disk is what counts
+                if (!directory && outputPath != null && Files.exists(outputPath)) {
+                    try {
+                        BYTES_WRITTEN.add(Files.size(outputPath));
+                    } catch (IOException e) {
+                        LOGGER.debug(AXFORM_MARKER,"Reading size of {}", outputPath, e);
+                    }
+                }
+                writeStats(statsFilePath.value(optionSet).toAbsolutePath(), parseNanos, System.nanoTime() - processStart);
+            }
+        } finally {
+            if (audit != null) {
+                try {
+                    audit.close();
+                } catch (IOException e) {
+                    LOGGER.error(AXFORM_MARKER,"Writing audit log", e);
+                    sneak(e);
+                }
+            }
+        }
+    }
+
+    private static void writeStats(final Path statsFile, final long parseNanos, final long processNanos) {
+        final String json = "{\"parseMillis\":" + TimeUnit.NANOSECONDS.toMillis(parseNanos) +
+            ",\"processMillis\":" + TimeUnit.NANOSECONDS.toMillis(processNanos) +
+            ",\"classesScanned\":" + CLASSES_SCANNED.sum() +
+            ",\"classesChanged\":" + CLASSES_CHANGED.sum() +
+            ",\"bytesWritten\":" + BYTES_WRITTEN.sum() + "}\n";
+        try {
+            Files.write(statsFile, json.getBytes(StandardCharsets.UTF_8));
         } catch (IOException e) {
-            LOGGER.error(AXFORM_MARKER,"Deleting existing out JAR", e);
+            LOGGER.error(AXFORM_MARKER,"Writing stats {}", statsFile, e);
             sneak(e);
         }
-        processJar(inputJarPath, outputJarPath, atFilePaths);
-        LOGGER.info(AXFORM_MARKER,"JAR transformation complete {}", outputJarPath);
+    }
+
+    private static void process(final boolean skipIfCurrent, final boolean deterministic, final boolean directory, final Path inputPath, final Path outputPath, final Path indexPath, final long maxInflightBytes, final int threads, final AuditLog audit) {
+        if (directory) {
+            processDirectory(inputPath, outputPath, indexPath, audit);
+            LOGGER.info(AXFORM_MARKER,"Directory transformation complete {}", outputPath);
+            return;
+        }
+        // Only hash the input when the fingerprint is used, it is a full extra read of the JAR
+        String fingerprint = null;
+        if (skipIfCurrent) {
+            try {
+                fingerprint = fingerprint(Hashes.sha1(inputPath));
+            } catch (IOException e) {
+                LOGGER.error(AXFORM_MARKER,"Hashing input JAR", e);
+                sneak(e);
+            }
+            if (fingerprint.equals(readFingerprint(outputPath))) {
+                LOGGER.info(AXFORM_MARKER,"Output jar {} is already transformed with the current rules, skipping", outputPath);
+                return;
+            }
+        }
+        if (outputPath != null) {
+            try {
+                LOGGER.warn("Found existing output jar {}, overwriting", outputPath);
+                Files.deleteIfExists(outputPath);
+            } catch (IOException e) {
+                LOGGER.error(AXFORM_MARKER,"Deleting existing out JAR", e);
+                sneak(e);
+            }
+        }
+        processJar(inputPath, fingerprint, outputPath, deterministic, new JarPipeline(data -> processClass(data, audit), maxInflightBytes, threads));
+        LOGGER.info(AXFORM_MARKER,"JAR transformation complete {}", outputPath == null ? "standard output" : outputPath);
+    }
+
+    /**
+     * Most runs only log a handful of lines to the console, which doesn't justify log4j-core's configuration
+     * parsing and plugin scanning on every JVM start. Those use log4j's simple logger instead, and log4j-core is
+     * only initialized when a log file is requested.
+     * <p>
+     * When auditing, access changes go to the audit log instead, so the log file is kept at info level and the
+     * debug messages are never built in the first place.
+     * <p>
+     * Embedded runs always use log4j-core, as the log file has to be swapped out for every run.
+     */
+    private static void configureLogging(final String logFile, final boolean debug, final boolean audit, final boolean embedded) {
+        final Level level = audit ? Level.INFO : Level.DEBUG;
+        if (embedded) {
+            // Log to this run's file only, the console belongs to the host
+            if (LOGGER == null) {
+                Configurator.initialize("", "atlog4j2.xml");
+                LOGGER = LogManager.getLogger(TransformerProcessor.class);
+                LoggerContext.getContext(false).getConfiguration().getRootLogger().removeAppender("SysErr");
+            }
+            final LoggerContext logcontext = LoggerContext.getContext(false);
+            final Configuration configuration = logcontext.getConfiguration();
+            if (embeddedLogFile != null) {
+                configuration.getRootLogger().removeAppender(embeddedLogFile.getName());
+                embeddedLogFile.stop();
+                embeddedLogFile = null;
+            }
+            if (logFile != null) {
+                embeddedLogFile = FileAppender.newBuilder().
+                        setName("logfile").
+                        withFileName(logFile).
+                        withAppend(false).
+                        setLayout(configuration.getAppender("SysErr").getLayout()).
+                        build();
+                embeddedLogFile.start();
+                configuration.getRootLogger().addAppender(embeddedLogFile, level, null);
+            }
+            configuration.getRootLogger().setLevel(level);
+            logcontext.updateLoggers();
+            return;
+        }
+        if (LOGGER != null)
+            return;
+
+        if (logFile == null) {
+            final String prefix = "org.apache.logging.log4j.simplelog.";
+            final Map<String, String> previous = new HashMap<>();
+            setProperty(previous, "log4j2.loggerContextFactory", SimpleLoggerContextFactory.class.getName());
+            setProperty(previous, prefix + "level", debug ? "DEBUG" : "INFO");
+            setProperty(previous, prefix + "logFile", "system.err");
+            setProperty(previous, prefix + "showdatetime", "true");
+            setProperty(previous, prefix + "dateTimeFormat", "HH:mm:ss");
+            try {
+                // The context factory and simple logger settings are read once, when the first logger is created
+                LOGGER = LogManager.getLogger(TransformerProcessor.class);
+            } finally {
+                // Put things back so we don't leak into anything else sharing this JVM
+                previous.forEach((key, value) -> {
+                    if (value == null)
+                        System.clearProperty(key);
+                    else
+                        System.setProperty(key, value);
+                });
+            }
+            return;
+        }
+
+        Configurator.initialize("", "atlog4j2.xml");
+        LOGGER = LogManager.getLogger(TransformerProcessor.class);
+
+        // configure a custom logfile with debug level logging
+        final LoggerContext logcontext = LoggerContext.getContext(false);
+        final Configuration configuration = logcontext.getConfiguration();
+        Appender fileAppender = FileAppender.newBuilder().
+                setName("logfile").
+                withFileName(logFile).
+                setLayout(configuration.getAppender("SysErr").getLayout()).
+                build();
+        fileAppender.start();
+        configuration.addAppender(fileAppender);
+        configuration.getRootLogger().addAppender(fileAppender, level, null);
+        configuration.getRootLogger().setLevel(level);
+        logcontext.updateLoggers();
+        LOGGER.info(AXFORM_MARKER,"Writing {} log file {}", level, logFile);
+    }
+
+    private static void setProperty(final Map<String, String> previous, final String key, final String value) {
+        previous.put(key, System.getProperty(key));
+        System.setProperty(key, value);
     }
 
     private static List<String> list(String... vars) {
         return Arrays.asList(vars);
     }
 
-    @SuppressWarnings("serial")
-    private static void processJar(final Path inputJar, final Path outputJarPath, final List<Path> atFilePaths) {
+    /**
+     * Serves jobs from standard input until it is closed. Each job is a line of arguments as passed to
+     * {@link #run(String...)}, separated by NUL characters, and is answered with a line of {@code OK} or
+     * {@code ERROR} followed by the failure. {@link #SERVER_READY} is sent first, so clients can tell that this
+     * version supports server mode.
+     */
+    private static void serve() {
+        final PrintStream out = System.out;
+        // Standard output is the reply channel now, keep anything else from writing to it
+        System.setOut(System.err);
+        out.println(SERVER_READY);
+        out.flush();
+
+        final BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+                try {
+                    execute(true, line.split("\0", -1));
+                    out.println("OK");
+                } catch (Throwable t) {
+                    out.println("ERROR " + String.valueOf(t).replace('\r', ' ').replace('\n', ' '));
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Logging is set up per job, and there is no one left to reply to
+            e.printStackTrace();
+        }
+    }
+
+    private static void loadCachedTransformers(final List<Path> atFilePaths) {
+        final StringBuilder key = new StringBuilder();
+        try {
+            for (Path path : atFilePaths)
+                key.append(Hashes.sha1(path)).append(' ');
+        } catch (IOException e) {
+            LOGGER.error(AXFORM_MARKER,"Hashing access transformer files", e);
+            sneak(e);
+        }
+
+        final AccessTransformerList cached = RULES_CACHE.get(key.toString());
+        if (cached != null) {
+            LOGGER.debug(AXFORM_MARKER,"Reusing access transformer files {}", atFilePaths);
+            AccessTransformerEngine.INSTANCE.setRules(cached);
+            return;
+        }
+        AccessTransformerEngine.INSTANCE.setRules(new AccessTransformerList());
+        loadTransformers(atFilePaths);
+        RULES_CACHE.put(key.toString(), AccessTransformerEngine.INSTANCE.getRules());
+    }
+
+    private static void loadTransformers(final List<Path> atFilePaths) {
         atFilePaths.forEach(path -> {
             AccessTransformerEngine.INSTANCE.addResource(path, path.getFileName().toString());
             LOGGER.debug(AXFORM_MARKER,"Loaded access transformer file {}", path);
         });
+    }
 
-        final Path parent = outputJarPath.getParent();
-        if (parent != null & !Files.exists(parent)) {
+    /**
+     * Transforms a JAR, reading from standard input if {@code inputJar} is null and writing to standard output
+     * if {@code outputJarPath} is null. Standard input is read strictly sequentially, so entries cannot be
+     * sorted in deterministic mode and keep the order they arrive in.
+     * <p>
+     * If {@code fingerprint} is not null it is written as the last entry, see {@link #FINGERPRINT}.
+     */
+    private static void processJar(final Path inputJar, final String fingerprint, final Path outputJarPath, final boolean deterministic, final JarPipeline pipeline) {
+        final Path parent = outputJarPath == null ? null : outputJarPath.getParent();
+        if (parent != null && !Files.exists(parent)) {
             try {
                 Files.createDirectories(parent);
             } catch (IOException e) {
@@ -118,78 +422,357 @@ public class TransformerProcessor {
             }
         }
 
-        final URI toUri = outputJarPath.toUri();
-        final URI outJarURI = URI.create("jar:"+toUri.toASCIIString());
-        try (FileSystem outJar = FileSystems.newFileSystem(outJarURI, new HashMap<String, String>() {{
-            put("create", "true");
-        }})) {
-            //final Path outRoot = StreamSupport.stream(outJar.getRootDirectories().spliterator(), false).findFirst().get();
-            try (FileSystem jarFile = FileSystems.newFileSystem(inputJar, ClassLoader.getSystemClassLoader())) {
-                Files.walk(StreamSupport.stream(jarFile.getRootDirectories().spliterator(), false).findFirst().orElseThrow(() -> new IllegalArgumentException("The JAR has no root?!")))
-                        .forEach(path -> {
-                            Path outPath = outJar.getPath(path.toAbsolutePath().toString());
-                            if (path.getNameCount() > 0 && String.valueOf(path.getFileName()).endsWith(".class")) {
-                                try (InputStream is = Files.newInputStream(path)) {
-                                    final ClassReader classReader = new ClassReader(is);
-                                    final ClassNode cn = new ClassNode();
-                                    classReader.accept(cn, 0);
-                                    final Type type = Type.getType('L'+cn.name.replaceAll("\\.","/")+';');
-
-                                    boolean write = false;
-                                    if (AccessTransformerEngine.INSTANCE.handlesClass(type)) {
-                                        LOGGER.debug(AXFORM_MARKER,"Transforming class {}", type);
-                                        write = AccessTransformerEngine.INSTANCE.transform(cn, type);
-                                    }
-
-                                    // Deal with issue in older fernflower versions that don't prioritize self-access levels
-                                    // By updating all inner class references
-                                    if (cn.innerClasses != null) {
-                                        for (InnerClassNode inner : cn.innerClasses) {
-                                            final Type innerType = Type.getType('L'+inner.name.replaceAll("\\.","/")+';');
-                                            final Map<String, AccessTransformer> transformers = AccessTransformerEngine.INSTANCE.getTransformers(innerType, TargetType.CLASS);
-
-                                            final int start = inner.access;
-                                            for (AccessTransformer at : transformers.values())
-                                                inner.access = at.getTargetAccess().mergeWith(at.getTargetFinalState().mergeWith(inner.access));
-
-                                            if (!write && start != inner.access) {
-                                                LOGGER.debug(AXFORM_MARKER,"Transforming class {}", type);
-                                                write = true;
-                                            }
-                                        }
-                                    }
-
-                                    if (write) {
-                                        ClassWriter cw = new ClassWriter(Opcodes.ASM5);
-                                        cn.accept(cw);
-                                        Files.write(outPath, cw.toByteArray());
-                                    } else {
-                                        LOGGER.debug(AXFORM_MARKER,"Skipping {}", type);
-                                        Files.copy(path, outPath);
-                                    }
-                                } catch (IOException e) {
-                                    LOGGER.error(AXFORM_MARKER,"Reading {}", path, e);
-                                    sneak(e);
-                                }
-                            } else if (!Files.exists(outPath)){
-                                try {
-                                    Files.copy(path, outPath);
-                                } catch (IOException e) {
-                                    LOGGER.error(AXFORM_MARKER,"Copying {}", path, e);
-                                    sneak(e);
-                                }
-                            }
-                        });
+        try (ZipOutputStream outJar = new ZipOutputStream(new BufferedOutputStream(outputJarPath == null ? System.out : Files.newOutputStream(outputJarPath)))) {
+            // Pin the level rather than relying on the default, so the compressed bytes are stable
+            outJar.setLevel(Deflater.DEFAULT_COMPRESSION);
+            try (JarPipeline.Source source = inputJar == null ? new ZipStreamSource(System.in) : new ZipFileSource(inputJar, deterministic)) {
+                pipeline.run(source, outJar, deterministic);
             } catch (IOException e) {
                 LOGGER.error(AXFORM_MARKER,"Reading JAR", e);
                 sneak(e);
             }
+
+            if (fingerprint != null) {
+                final ZipEntry entry = new ZipEntry(FINGERPRINT);
+                entry.setTime(JarPipeline.CONSTANT_TIME);
+                outJar.putNextEntry(entry);
+                outJar.write(fingerprint.getBytes(StandardCharsets.UTF_8));
+                outJar.closeEntry();
+            }
         } catch (IOException e) {
             LOGGER.error(AXFORM_MARKER,"Writing JAR", e);
             sneak(e);
         }
     }
 
+    /**
+     * Transforms a directory of class files, such as compiler output, either in place or into another directory.
+     * <p>
+     * The size and modification time of every processed file is recorded in an index alongside the rules hash,
+     * so files that have not changed since the last run with the same rules are skipped. When transforming into
+     * another directory, outputs of files that were removed from the input since the last run are deleted.
+     * Transforming in place cannot undo access changes from rules that were since removed.
+     */
+    private static void processDirectory(final Path inputDir, final Path outputDir, final Path indexPath, final AuditLog audit) {
+        final boolean inPlace = inputDir.equals(outputDir);
+        final String rulesHash = AccessTransformerEngine.INSTANCE.getRulesHash();
+
+        // Stamps of the last run are only trusted if the rules are the same, but its files are needed to find orphans either way
+        final Map<String, String> previous = new HashMap<>();
+        final Set<String> previousFiles = new HashSet<>();
+        try {
+            if (Files.exists(indexPath)) {
+                final List<String> lines = Files.readAllLines(indexPath);
+                final boolean sameRules = !lines.isEmpty() && lines.get(0).equals(rulesHash);
+                for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+                    final int idx = line.indexOf('\t');
+                    previousFiles.add(line.substring(0, idx));
+                    if (sameRules)
+                        previous.put(line.substring(0, idx), line.substring(idx + 1));
+                }
+                if (!sameRules && inPlace)
+                    LOGGER.warn(AXFORM_MARKER,"Rules changed since the last in place run of {}, access changes from removed rules will not be reverted", inputDir);
+            }
+            Files.createDirectories(outputDir);
+        } catch (IOException e) {
+            LOGGER.error(AXFORM_MARKER,"Reading index {}", indexPath, e);
+            sneak(e);
+        }
+
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(inputDir)) {
+            files = walk.filter(Files::isRegularFile).filter(path -> !path.equals(indexPath)).collect(Collectors.toList());
+        } catch (IOException e) {
+            LOGGER.error(AXFORM_MARKER,"Walking {}", inputDir, e);
+            return;
+        }
+
+        final Map<String, String> index = new ConcurrentHashMap<>();
+        final LongAdder skipped = new LongAdder();
+        files.parallelStream().forEach(path -> {
+            final String name = inputDir.relativize(path).toString().replace('\\', '/');
+            final Path outPath = outputDir.resolve(name);
+            try {
+                final String stamp = fileStamp(path);
+                if (stamp.equals(previous.get(name)) && (inPlace || Files.exists(outPath))) {
+                    index.put(name, stamp);
+                    skipped.increment();
+                    return;
+                }
+
+                final byte[] transformed = name.endsWith(".class") ? processClass(Files.readAllBytes(path), audit) : null;
+                if (transformed != null) {
+                    Files.createDirectories(outPath.getParent());
+                    Files.write(outPath, transformed);
+                    BYTES_WRITTEN.add(transformed.length);
+                } else if (!inPlace) {
+                    Files.createDirectories(outPath.getParent());
+                    Files.copy(path, outPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                    BYTES_WRITTEN.add(Files.size(outPath));
+                }
+
+                // In place, record the rewritten file so the next run sees it as unchanged
+                index.put(name, inPlace ? fileStamp(path) : stamp);
+            } catch (IOException e) {
+                LOGGER.error(AXFORM_MARKER,"Processing {}", path, e);
+                sneak(e);
+            }
+        });
+        LOGGER.info(AXFORM_MARKER,"Skipped {} unchanged files out of {}", skipped.sum(), files.size());
+
+        if (!inPlace) {
+            for (String name : previousFiles) {
+                if (!index.containsKey(name))
+                    deleteOrphan(outputDir, outputDir.resolve(name));
+            }
+        }
+
+        final List<String> lines = new ArrayList<>(index.size() + 1);
+        lines.add(rulesHash);
+        index.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(e -> lines.add(e.getKey() + '\t' + e.getValue()));
+        try {
+            if (indexPath.getParent() != null)
+                Files.createDirectories(indexPath.getParent());
+            Files.write(indexPath, lines);
+        } catch (IOException e) {
+            LOGGER.error(AXFORM_MARKER,"Writing index {}", indexPath, e);
+            sneak(e);
+        }
+    }
+
+    /**
+     * Deletes the output of a file that is no longer in the input, along with any directories that leaves empty.
+     */
+    private static void deleteOrphan(final Path outputDir, Path path) {
+        try {
+            Files.deleteIfExists(path);
+            LOGGER.debug(AXFORM_MARKER,"Deleted {}, its input was removed", path);
+            for (path = path.getParent(); path != null && !path.equals(outputDir) && path.startsWith(outputDir); path = path.getParent()) {
+                try (Stream<Path> children = Files.list(path)) {
+                    if (children.findAny().isPresent())
+                        break;
+                }
+                Files.delete(path);
+            }
+        } catch (IOException e) {
+            LOGGER.error(AXFORM_MARKER,"Deleting {}", path, e);
+            sneak(e);
+        }
+    }
+
+    private static String fingerprint(final String inputHash) {
+        return "rules=" + AccessTransformerEngine.INSTANCE.getRulesHash() + '\n' +
+               "input=" + inputHash + '\n' +
+               "version=" + version() + '\n';
+    }
+
+    /**
+     * @return The implementation version from our manifest, or when there is none, such as when running from
+     *         an unversioned JAR or from classes during development, the hash of the JAR we were loaded from.
+     */
+    private static String version() {
+        if (version != null)
+            return version;
+
+        version = TransformerProcessor.class.getPackage().getImplementationVersion();
+        if (version != null)
+            return version;
+
+        try {
+            final CodeSource source = TransformerProcessor.class.getProtectionDomain().getCodeSource();
+            final Path location = source == null ? null : Paths.get(source.getLocation().toURI());
+            if (location != null && Files.isRegularFile(location))
+                return version = Hashes.sha1(location);
+        } catch (Exception e) {
+            LOGGER.debug(AXFORM_MARKER,"Could not hash the processor JAR", e);
+        }
+        return version = "development";
+    }
+
+    private static String readFingerprint(final Path jar) {
+        if (!Files.exists(jar))
+            return null;
+
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            final ZipEntry entry = zipFile.getEntry(FINGERPRINT);
+            if (entry == null)
+                return null;
+            try (InputStream is = zipFile.getInputStream(entry)) {
+                return new String(JarPipeline.readAllBytes(is, entry.getSize()), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            LOGGER.debug(AXFORM_MARKER,"Could not read fingerprint from {}", jar, e);
+            return null;
+        }
+    }
+
+    private static String fileStamp(final Path path) throws IOException {
+        return Files.size(path) + "\t" + Files.getLastModifiedTime(path).toMillis();
+    }
+
+    /**
+     * Transforms a single class file.
+     *
+     * @return The transformed class bytes, or {@code null} if nothing in the class changed
+     */
+    private static byte[] processClass(final byte[] data, final AuditLog audit) {
+        CLASSES_SCANNED.increment();
+        final ClassReader classReader = new ClassReader(data);
+        final Type type = Type.getObjectType(classReader.getClassName());
+        if (!AccessTransformerEngine.INSTANCE.handlesClass(type))
+            return processInnerClasses(classReader, type, audit);
+
+        final ClassNode cn = new ClassNode();
+        classReader.accept(cn, 0);
+
+        LOGGER.debug(AXFORM_MARKER,"Transforming class {}", type);
+        boolean write;
+        if (audit == null) {
+            write = AccessTransformerEngine.INSTANCE.transformTargeted(cn, type);
+        } else {
+            // Transforming only ever changes access flags, so the members stay in the same order
+            final int classAccess = cn.access;
+            final int[] fieldAccess = cn.fields.stream().mapToInt(f -> f.access).toArray();
+            final int[] methodAccess = cn.methods.stream().mapToInt(m -> m.access).toArray();
+            write = AccessTransformerEngine.INSTANCE.transformTargeted(cn, type);
+            if (classAccess != cn.access)
+                audit.record(cn.name, "class", null, null, classAccess, cn.access);
+            for (int i = 0; i < fieldAccess.length; i++) {
+                final FieldNode field = cn.fields.get(i);
+                if (fieldAccess[i] != field.access)
+                    audit.record(cn.name, "field", field.name, field.desc, fieldAccess[i], field.access);
+            }
+            for (int i = 0; i < methodAccess.length; i++) {
+                final MethodNode method = cn.methods.get(i);
+                if (methodAccess[i] != method.access)
+                    audit.record(cn.name, "method", method.name, method.desc, methodAccess[i], method.access);
+            }
+        }
+
+        // Deal with issue in older fernflower versions that don't prioritize self-access levels
+        // By updating all inner class references
+        if (cn.innerClasses != null) {
+            for (InnerClassNode inner : cn.innerClasses) {
+                final int start = inner.access;
+                inner.access = AccessTransformerEngine.INSTANCE.transformInnerClass(inner.name, inner.access);
+                if (audit != null && start != inner.access)
+                    audit.record(cn.name, "inner", inner.name, null, start, inner.access);
+
+                write |= start != inner.access;
+            }
+        }
+
+        if (!write) {
+            LOGGER.debug(AXFORM_MARKER,"Skipping {}", type);
+            return null;
+        }
+
+        CLASSES_CHANGED.increment();
+        ClassWriter cw = new ClassWriter(Opcodes.ASM5);
+        cn.accept(cw);
+        return cw.toByteArray();
+    }
+
+    /**
+     * Transforms the InnerClasses attribute of a class that isn't targeted itself. The attribute is checked without
+     * building a {@link ClassNode}, so classes that don't reference a targeted class are skipped cheaply, and the
+     * transformed access of each entry is looked up only once and reused when writing.
+     *
+     * @return The transformed class bytes, or {@code null} if no entry changed
+     */
+    private static byte[] processInnerClasses(final ClassReader classReader, final Type type, final AuditLog audit) {
+        final Map<String, Integer> changed = new HashMap<>();
+        classReader.accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public void visitInnerClass(final String name, final String outerName, final String innerName, final int access) {
+                final int transformed = AccessTransformerEngine.INSTANCE.transformInnerClass(name, access);
+                if (transformed != access)
+                    changed.put(name, transformed);
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        if (changed.isEmpty()) {
+            LOGGER.debug(AXFORM_MARKER,"Skipping {}", type);
+            return null;
+        }
+
+        LOGGER.debug(AXFORM_MARKER,"Transforming class {}", type);
+        CLASSES_CHANGED.increment();
+        // Only InnerClasses entries change, so everything else is copied straight from the reader
+        final ClassWriter cw = new ClassWriter(classReader, 0);
+        classReader.accept(new ClassVisitor(Opcodes.ASM9, cw) {
+            @Override
+            public void visitInnerClass(final String name, final String outerName, final String innerName, final int access) {
+                final Integer transformed = changed.get(name);
+                if (transformed == null) {
+                    super.visitInnerClass(name, outerName, innerName, access);
+                    return;
+                }
+                if (audit != null)
+                    audit.record(classReader.getClassName(), "inner", name, null, access, transformed);
+                super.visitInnerClass(name, outerName, innerName, transformed);
+            }
+        }, 0);
+        return cw.toByteArray();
+    }
+
+    private static final class ZipFileSource implements JarPipeline.Source {
+        private final ZipFile zipFile;
+        private final Iterator<? extends ZipEntry> entries;
+
+        private ZipFileSource(final Path path, final boolean sorted) throws IOException {
+            this.zipFile = new ZipFile(path.toFile());
+            final List<ZipEntry> entries = new ArrayList<>(Collections.list(zipFile.entries()));
+            entries.removeIf(entry -> FINGERPRINT.equals(entry.getName()));
+            if (sorted)
+                entries.sort(ENTRY_ORDER);
+            this.entries = entries.iterator();
+        }
+
+        @Override
+        public ZipEntry next() {
+            return entries.hasNext() ? entries.next() : null;
+        }
+
+        @Override
+        public byte[] read(final ZipEntry entry) throws IOException {
+            try (InputStream is = zipFile.getInputStream(entry)) {
+                return JarPipeline.readAllBytes(is, entry.getSize());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            zipFile.close();
+        }
+    }
+
+    private static final class ZipStreamSource implements JarPipeline.Source {
+        private final ZipInputStream zipStream;
+
+        private ZipStreamSource(final InputStream in) {
+            this.zipStream = new ZipInputStream(new BufferedInputStream(in));
+        }
+
+        @Override
+        public ZipEntry next() throws IOException {
+            ZipEntry entry = zipStream.getNextEntry();
+            while (entry != null && FINGERPRINT.equals(entry.getName()))
+                entry = zipStream.getNextEntry();
+            return entry;
+        }
+
+        @Override
+        public byte[] read(final ZipEntry entry) throws IOException {
+            return JarPipeline.readAllBytes(zipStream, entry.getSize());
+        }
+
+        @Override
+        public void close() throws IOException {
+            zipStream.close();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private static <R, E extends Throwable> R sneak(Throwable t) throws E {
         throw (E) t;
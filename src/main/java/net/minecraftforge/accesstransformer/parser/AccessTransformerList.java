@@ -9,6 +9,7 @@ import net.minecraftforge.accesstransformer.WildcardTarget;
 import net.minecraftforge.accesstransformer.FieldTarget;
 import net.minecraftforge.accesstransformer.MethodTarget;
 import net.minecraftforge.accesstransformer.InnerClassTarget;
+import net.minecraftforge.accesstransformer.PackageTarget;
 import net.minecraftforge.accesstransformer.INameHandler;
 import net.minecraftforge.accesstransformer.IdentityNameHandler;
 import net.minecraftforge.accesstransformer.AccessTransformer;
@@ -30,20 +31,48 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AccessTransformerList {
     private static final Logger LOGGER = LogManager.getLogger("AXFORM");
     private static final Marker AXFORM_MARKER = MarkerManager.getMarker("AXFORM");
-    private final Map<Target<?>, AccessTransformer> accessTransformers = new HashMap<>();
+    private static final String PACKAGE_SUFFIX = "/**";
+    // Keyed by the class the rules apply to, the inner maps are replaced rather than modified once published
+    private final Map<String, Map<Target<?>, AccessTransformer>> accessTransformers = new ConcurrentHashMap<>();
     private final Set<Type> validAtTypes = new HashSet<>();
-    private final Renamer renamer = new Renamer();
+    // Package rules by package segment, so finding the rules of a class only walks the depth of its package
+    private final PackageNode packages = new PackageNode();
+    // The final states of the rules for each class and its members, as a mask of ordinals, to check package rules against
+    private final Map<String, Integer> classFinalStates = new HashMap<>();
+    private final boolean lazy;
+    // Lazy mode only: the lines of every class that hasn't been transformed yet, and the final state of every line's target
+    private final ConcurrentHashMap<String, List<Line>> pending = new ConcurrentHashMap<>();
+    private final Map<String, FinalState> finalStates = new HashMap<>();
     private INameHandler nameHandler = new IdentityNameHandler();
+    private volatile Map<String, List<AccessTransformer>> classTransformers;
+    private volatile boolean loaded;
+
+    public AccessTransformerList() {
+        this(false);
+    }
+
+    /**
+     * Creates a list that, if {@code lazy}, only records which classes are targeted when loading. The rules for a
+     * class are parsed, renamed and merged the first time they are asked for, so the rules for classes that are never
+     * loaded cost next to nothing. Invalid lines and conflicting final states are still reported when loading, except
+     * for conflicts only caused by the name handler mapping two names to the same one, which are thrown the first time
+     * the rules of their class are asked for.
+     */
+    public AccessTransformerList(boolean lazy) {
+        this.lazy = lazy;
+    }
 
     public void loadFromResource(String resourceName) throws URISyntaxException, IOException {
         final Path path = Paths.get(getClass().getClassLoader().getResource(resourceName).toURI());
@@ -56,8 +85,12 @@ public class AccessTransformerList {
     }
 
     public void load(Path path, String resourceName, List<String> lines) {
+        this.loaded = true;
         boolean failed = false;
-        List<AccessTransformer> ats = new ArrayList<>();
+        // Lazily parsed lines are renamed with the name handler that was set when they were loaded
+        final Renamer renamer = new Renamer(this.nameHandler);
+        List<Line> parsed = new ArrayList<>();
+        List<AccessTransformer> packageRules = new ArrayList<>();
         int lineIndex = -1;
         for (String line : lines) {
             lineIndex++;
@@ -79,49 +112,230 @@ public class AccessTransformerList {
             }
 
             FinalState fmod = ModifierProcessor.finalState(tokens.get(0));
-            Target<?> target = null;
-
             String cls = tokens.get(1).replace('.', '/');
-            String name = tokens.size() == 2 ? null : tokens.get(2);
-
-            if (tokens.size() == 2) { // Class
-                target = new ClassTarget(renamer.map(cls));
-                //Java uses this to identify inner classes, Scala/others use it for synthetics. Either way we should be fine as it will skip over classes that don't exist.
-                int idx = target.getClassName().lastIndexOf('$');
-                if (idx != -1) {
-                    String parent = target.getClassName().substring(0, idx);
-                    ats.add(new AccessTransformer(new InnerClassTarget(parent, target.getClassName()), mod, fmod, resourceName, lineIndex));
+            if (cls.endsWith(PACKAGE_SUFFIX)) {
+                if (tokens.size() != 2 || cls.length() == PACKAGE_SUFFIX.length()) {
+                    LOGGER.error(AXFORM_MARKER, "Invalid access transformer line in {}: {}", resourceName, line);
+                    failed = true;
+                } else {
+                    // Name handlers only know class and member names, so packages are never renamed
+                    PackageTarget target = new PackageTarget(cls.substring(0, cls.length() - PACKAGE_SUFFIX.length()));
+                    packageRules.add(new AccessTransformer(target, mod, fmod, resourceName, lineIndex));
                 }
-            } else if ("*".equals(name)) { // Field Wildcard
-                target = new WildcardTarget(renamer.map(cls), false);
-            } else if ("*()".equals(name)) { // Method Wildcard
-                target = new WildcardTarget(renamer.map(cls), true);
-            } else if (name.indexOf('(') == -1) { // Fields
-                target = new FieldTarget(renamer.map(cls), renamer.mapFieldName(cls, name, null));
-            } else { // Methods
-                int idx = name.indexOf('(');
-                String desc = name.substring(idx).replace('.', '/');
-                name = name.substring(0, idx);
-                target = new MethodTarget(renamer.map(cls), renamer.mapMethodName(cls, name, desc), renamer.mapMethodDesc(desc));
+                continue;
             }
-            ats.add(new AccessTransformer(target, mod, fmod, resourceName, lineIndex));
+            String name = tokens.size() == 2 ? null : tokens.get(2);
+            parsed.add(new Line(renamer, resourceName, lineIndex, mod, fmod, cls, renamer.map(cls), name));
         }
 
         if (failed)
             throw new IllegalArgumentException("Invalid AccessTransformer config, see log for details");
 
-        final HashMap<Target<?>, AccessTransformer> localATCopy = new HashMap<>(accessTransformers);
-        mergeAccessTransformers(ats, localATCopy, resourceName);
-        final List<AccessTransformer> invalidTransformers = invalidTransformers(localATCopy);
+        final Map<String, AccessTransformer> changedPackages = mergePackages(packageRules, resourceName);
+        checkPackageConflicts(changedPackages, parsed);
+        if (this.lazy) {
+            synchronized (this) {
+                defer(parsed);
+            }
+        } else {
+            merge(parsed, null);
+        }
+        changedPackages.values().forEach(this::putPackageRule);
+        for (Line line : parsed)
+            this.classFinalStates.merge(line.className, 1 << line.finalState.ordinal(), (a, b) -> a | b);
+
+        for (Line line : parsed) {
+            this.validAtTypes.add(Type.getType('L' + line.className + ';'));
+            String parent = line.parentClassName();
+            if (parent != null)
+                this.validAtTypes.add(Type.getType('L' + parent + ';'));
+        }
+        LOGGER.debug(AXFORM_MARKER,"Loaded access transformer {} from path {}", resourceName, path);
+    }
+
+    /**
+     * Merges the transformers of lines into the rules of their classes, throwing if any of them ends up in conflict.
+     * Nothing is changed if it throws.
+     *
+     * @param className The only class to merge the transformers of, or {@code null} for every class
+     */
+    private void merge(List<Line> lines, String className) {
+        final Map<String, Map<Target<?>, AccessTransformer>> changed = new HashMap<>();
+        for (Line line : lines) {
+            for (AccessTransformer at : line.materialize(className)) {
+                changed.computeIfAbsent(at.getTarget().getClassName(), k -> new HashMap<>(accessTransformers.getOrDefault(k, Collections.emptyMap())))
+                    .merge(at.getTarget(), at, (at1, at2) -> at1.mergeStates(at2, line.resourceName));
+            }
+        }
+
+        final List<AccessTransformer> invalidTransformers = new ArrayList<>();
+        changed.values().forEach(rules -> invalidTransformers.addAll(invalidTransformers(rules)));
         if (!invalidTransformers.isEmpty()) {
             invalidTransformers.forEach(at -> LOGGER.error(AXFORM_MARKER,"Invalid access transform final state for target {}. Referred in resources {}.", at.getTarget(), at.getOrigins()));
             throw new IllegalArgumentException("Invalid AT final conflicts");
         }
-        this.accessTransformers.clear();
-        this.accessTransformers.putAll(localATCopy);
-        for (AccessTransformer newAT : ats)
-            this.validAtTypes.add(newAT.getTarget().getASMType());
-        LOGGER.debug(AXFORM_MARKER,"Loaded access transformer {} from path {}", resourceName, path);
+        this.accessTransformers.putAll(changed);
+        this.classTransformers = null;
+    }
+
+    /**
+     * Merges package rules with each other and the loaded ones, throwing if any of them ends up in conflict.
+     *
+     * @return The merged rules of every package that changed, to be put in the trie once the rest of the file is loaded
+     */
+    private Map<String, AccessTransformer> mergePackages(List<AccessTransformer> rules, String resourceName) {
+        final Map<String, AccessTransformer> changed = new HashMap<>();
+        for (AccessTransformer at : rules) {
+            final String pkg = at.getTarget().getClassName();
+            AccessTransformer existing = changed.get(pkg);
+            if (existing == null)
+                existing = packageRule(pkg);
+            changed.put(pkg, existing == null ? at : existing.mergeStates(at, resourceName));
+        }
+
+        final List<AccessTransformer> invalidTransformers = new ArrayList<>();
+        for (AccessTransformer at : changed.values()) {
+            if (!at.isValid())
+                invalidTransformers.add(at);
+        }
+        if (!invalidTransformers.isEmpty()) {
+            invalidTransformers.forEach(at -> LOGGER.error(AXFORM_MARKER,"Invalid access transform final state for target {}. Referred in resources {}.", at.getTarget(), at.getOrigins()));
+            throw new IllegalArgumentException("Invalid AT final conflicts");
+        }
+        return changed;
+    }
+
+    /**
+     * Checks that no package rule sets the opposite final state of a rule for a class, member or subpackage in it,
+     * which would otherwise be decided by the order they are applied in. Nothing is changed if it throws.
+     *
+     * @param changedPackages The merged rules of the packages being loaded
+     * @param lines           The class and member rules being loaded
+     */
+    private void checkPackageConflicts(Map<String, AccessTransformer> changedPackages, List<Line> lines) {
+        final Map<String, AccessTransformer> packageRules = getPackageTransformers();
+        packageRules.putAll(changedPackages);
+        if (packageRules.isEmpty())
+            return;
+
+        final Map<String, Integer> classStates = new HashMap<>();
+        for (Line line : lines)
+            classStates.merge(line.className, 1 << line.finalState.ordinal(), (a, b) -> a | b);
+        boolean failed = false;
+        // New class rules against every package rule
+        for (Map.Entry<String, Integer> entry : classStates.entrySet())
+            failed |= checkPackageConflicts(entry.getKey(), entry.getValue(), packageRules);
+        // Loaded class rules against new package rules
+        if (!changedPackages.isEmpty()) {
+            for (Map.Entry<String, Integer> entry : this.classFinalStates.entrySet())
+                failed |= checkPackageConflicts(entry.getKey(), entry.getValue(), changedPackages);
+        }
+        // Package rules against the rules of the packages they are in, which only ever conflict if one of them is new
+        for (AccessTransformer at : packageRules.values()) {
+            final String pkg = at.getTarget().getClassName();
+            failed |= checkPackageConflicts(pkg + "/**", 1 << at.getTargetFinalState().ordinal(), packageRules);
+        }
+        if (failed)
+            throw new IllegalArgumentException("Invalid AT final conflicts");
+    }
+
+    /**
+     * @param className   The internal name of a class, or a package followed by {@code /**}
+     * @param finalStates The final states of the rules for it, as a mask of ordinals
+     * @return Whether any of the package rules containing it has a conflicting final state, which is logged
+     */
+    private static boolean checkPackageConflicts(String className, int finalStates, Map<String, AccessTransformer> packageRules) {
+        boolean failed = false;
+        for (int slash = className.indexOf('/'); slash != -1; slash = className.indexOf('/', slash + 1)) {
+            final AccessTransformer at = packageRules.get(className.substring(0, slash));
+            if (at == null || at.getTargetFinalState() == FinalState.LEAVE)
+                continue;
+
+            // The opposite of the package's final state, as the package rules were already merged with each other
+            final int opposite = 1 << (at.getTargetFinalState().ordinal() ^ FinalState.CONFLICT.ordinal());
+            if ((finalStates & opposite) != 0) {
+                LOGGER.error(AXFORM_MARKER, "Invalid access transform final state for target {}. Conflicts with {} referred in resources {}.", className, at.getTarget(), at.getOrigins());
+                failed = true;
+            }
+        }
+        return failed;
+    }
+
+    private AccessTransformer packageRule(String pkg) {
+        PackageNode node = this.packages;
+        for (String segment : pkg.split("/")) {
+            node = node.children.get(segment);
+            if (node == null)
+                return null;
+        }
+        return node.rule;
+    }
+
+    private void putPackageRule(AccessTransformer at) {
+        PackageNode node = this.packages;
+        for (String segment : at.getTarget().getClassName().split("/"))
+            node = node.children.computeIfAbsent(segment, k -> new PackageNode());
+        node.rule = at;
+    }
+
+    /**
+     * Records lines to be materialized once their class is asked for. Conflicts are checked on the raw target of each
+     * line, which only differs from the renamed target if the name handler maps two names to the same one.
+     */
+    private void defer(List<Line> lines) {
+        final Map<String, FinalState> changed = new HashMap<>();
+        boolean failed = false;
+        for (Line line : lines) {
+            for (String target : line.targets()) {
+                FinalState state = changed.getOrDefault(target, this.finalStates.getOrDefault(target, FinalState.LEAVE));
+                state = FinalState.values()[state.ordinal() | line.finalState.ordinal()];
+                changed.put(target, state);
+                if (state == FinalState.CONFLICT) {
+                    LOGGER.error(AXFORM_MARKER,"Invalid access transform final state for target {}. Referred in resources {}.", target, line.origin());
+                    failed = true;
+                }
+            }
+        }
+        if (failed)
+            throw new IllegalArgumentException("Invalid AT final conflicts");
+
+        this.finalStates.putAll(changed);
+        final Map<String, List<Line>> added = new HashMap<>();
+        for (Line line : lines) {
+            added.computeIfAbsent(line.className, k -> new ArrayList<>()).add(line);
+            String parent = line.parentClassName();
+            if (parent != null)
+                added.computeIfAbsent(parent, k -> new ArrayList<>()).add(line);
+        }
+        // Pending lists are replaced rather than modified, as they may be materialized at the same time
+        added.forEach((className, classLines) -> this.pending.merge(className, classLines, (a, b) -> {
+            final List<Line> ret = new ArrayList<>(a);
+            ret.addAll(b);
+            return ret;
+        }));
+        this.classTransformers = null;
+    }
+
+    /**
+     * Parses, renames and merges the pending lines for a class. The rules of a class only ever end up under that
+     * class, so this only locks the class's entry in the pending map: other classes are materialized at the same time,
+     * and anything asking for the same class waits until its rules are merged.
+     *
+     * @throws IllegalArgumentException If the lines conflict, in which case they are left pending
+     */
+    private void materialize(String className) {
+        if (!this.pending.containsKey(className))
+            return;
+
+        this.pending.computeIfPresent(className, (k, lines) -> {
+            merge(lines, className);
+            return null;
+        });
+    }
+
+    private void materializeAll() {
+        for (String className : new ArrayList<>(this.pending.keySet()))
+            materialize(className);
     }
 
     private static List<String> tokenize(String line) {
@@ -162,13 +376,7 @@ public class AccessTransformerList {
         return ret;
     }
 
-    private void mergeAccessTransformers(List<AccessTransformer> atList, Map<Target<?>, AccessTransformer> accessTransformers, String resourceName) {
-        for (AccessTransformer at : atList) {
-            accessTransformers.merge(at.getTarget(), at, (at1, at2) -> at1.mergeStates(at2, resourceName));
-        }
-    }
-
-    private List<AccessTransformer> invalidTransformers(HashMap<Target<?>, AccessTransformer> accessTransformers) {
+    private static List<AccessTransformer> invalidTransformers(Map<Target<?>, AccessTransformer> accessTransformers) {
         List<AccessTransformer> ret = new ArrayList<>();
         for (AccessTransformer at : accessTransformers.values()) {
             if (!at.isValid())
@@ -178,20 +386,86 @@ public class AccessTransformerList {
     }
 
     public Map<String, List<AccessTransformer>> getAccessTransformers() {
+        if (this.lazy)
+            materializeAll();
+        return accessTransformersByClass();
+    }
+
+    private Map<String, List<AccessTransformer>> accessTransformersByClass() {
         Map<String, List<AccessTransformer>> ret = new HashMap<>();
         accessTransformers.forEach((k, v) -> {
-            ret.computeIfAbsent(v.getTarget().getClassName(), t -> new ArrayList<>()).add(v);
+            if (!v.isEmpty())
+                ret.put(k, new ArrayList<>(v.values()));
         });
         return ret;
     }
 
+    /**
+     * Checks if any config was loaded into this list, even one that failed to load or had no rules.
+     */
+    public boolean isLoaded() {
+        return this.loaded;
+    }
+
     public boolean containsClassTarget(Type type) {
-        return this.validAtTypes.contains(type);
+        return this.validAtTypes.contains(type) || !getPackageTransformers(type.getInternalName()).isEmpty();
+    }
+
+    /**
+     * Gets the rules of every package containing a class, from the outermost package to the innermost, which is the
+     * order they should be applied in. Any rules targeting the class itself are applied after these. None of them
+     * have conflicting final states, as those are rejected when loading.
+     *
+     * @param className The internal name of the class
+     */
+    public List<AccessTransformer> getPackageTransformers(String className) {
+        List<AccessTransformer> ret = null;
+        PackageNode node = this.packages;
+        int start = 0;
+        int end;
+        while (!node.children.isEmpty() && (end = className.indexOf('/', start)) != -1) {
+            node = node.children.get(className.substring(start, end));
+            if (node == null)
+                break;
+            if (node.rule != null) {
+                if (ret == null)
+                    ret = new ArrayList<>(1);
+                ret.add(node.rule);
+            }
+            start = end + 1;
+        }
+        return ret == null ? Collections.emptyList() : ret;
+    }
+
+    /**
+     * Gets every package rule, keyed by the internal name of the package it applies to.
+     */
+    public Map<String, AccessTransformer> getPackageTransformers() {
+        Map<String, AccessTransformer> ret = new HashMap<>();
+        collectPackageRules(this.packages, ret);
+        return ret;
+    }
+
+    private static void collectPackageRules(PackageNode node, Map<String, AccessTransformer> ret) {
+        if (node.rule != null)
+            ret.put(node.rule.getTarget().getClassName(), node.rule);
+        for (PackageNode child : node.children.values())
+            collectPackageRules(child, ret);
     }
 
     public Map<TargetType, Map<String, AccessTransformer>> getTransformersForTarget(Type type) {
+        if (this.lazy)
+            materialize(type.getInternalName());
+        return transformersForTarget(type);
+    }
+
+    private Map<TargetType, Map<String, AccessTransformer>> transformersForTarget(Type type) {
         Map<TargetType, Map<String, AccessTransformer>> ret = new HashMap<>();
-        accessTransformers.forEach((k, v) -> {
+        Map<Target<?>, AccessTransformer> rules = accessTransformers.get(type.getInternalName());
+        if (rules == null)
+            return ret;
+
+        rules.forEach((k, v) -> {
             if (!type.equals(k.getASMType()))
                 return;
             ret.computeIfAbsent(v.getTarget().getType(), t -> new HashMap<>())
@@ -200,25 +474,165 @@ public class AccessTransformerList {
         return ret;
     }
 
+    /**
+     * Gets every class level transformer, keyed by the internal name of the class it applies to.
+     * This is built once per loaded rule set, so it can be probed per InnerClasses entry without scanning every rule.
+     */
+    public Map<String, List<AccessTransformer>> getClassTransformers() {
+        Map<String, List<AccessTransformer>> ret = this.classTransformers;
+        if (ret == null) {
+            if (this.lazy)
+                materializeAll();
+            ret = buildClassTransformers();
+            this.classTransformers = ret;
+        }
+        return ret;
+    }
+
+    private Map<String, List<AccessTransformer>> buildClassTransformers() {
+        Map<String, List<AccessTransformer>> ret = new HashMap<>();
+        for (Map<Target<?>, AccessTransformer> rules : accessTransformers.values()) {
+            for (AccessTransformer at : rules.values()) {
+                if (at.getTarget().getType() == TargetType.CLASS)
+                    ret.computeIfAbsent(at.getTarget().getClassName(), k -> new ArrayList<>()).add(at);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the class level transformers of a single class, or {@code null} if there are none. Unlike
+     * {@link #getClassTransformers()}, this only materializes the rules of that class in lazy mode.
+     */
+    public List<AccessTransformer> getClassTransformers(String className) {
+        if (!this.lazy)
+            return getClassTransformers().get(className);
+
+        materialize(className);
+        Map<Target<?>, AccessTransformer> rules = accessTransformers.get(className);
+        if (rules == null)
+            return null;
+
+        List<AccessTransformer> ret = null;
+        for (AccessTransformer at : rules.values()) {
+            if (at.getTarget().getType() != TargetType.CLASS)
+                continue;
+            if (ret == null)
+                ret = new ArrayList<>();
+            ret.add(at);
+        }
+        return ret;
+    }
+
     public void setNameHandler(final INameHandler nameHandler) {
         this.nameHandler = nameHandler;
         LOGGER.debug(AXFORM_MARKER, "Set name handler {}", nameHandler);
     }
 
-    private final class Renamer extends Remapper {
+    private static final class Renamer extends Remapper {
+        private final INameHandler nameHandler;
+
+        private Renamer(INameHandler nameHandler) {
+            this.nameHandler = nameHandler;
+        }
+
         @Override
         public String map(String internalName) {
-            return AccessTransformerList.this.nameHandler.translateClassName(internalName);
+            return this.nameHandler.translateClassName(internalName);
         }
 
         @Override
         public String mapFieldName(String owner, String name, String descriptor) {
-            return AccessTransformerList.this.nameHandler.translateFieldName(name);
+            return this.nameHandler.translateFieldName(name);
         }
 
         @Override
         public String mapMethodName(String owner, String name, String descriptor) {
-            return AccessTransformerList.this.nameHandler.translateMethodName(name);
+            return this.nameHandler.translateMethodName(name);
+        }
+    }
+
+    private static final class PackageNode {
+        private final Map<String, PackageNode> children = new HashMap<>();
+        private AccessTransformer rule;
+    }
+
+    /**
+     * A tokenized line, with only its class renamed.
+     */
+    private static final class Line {
+        private final Renamer renamer;
+        private final String resourceName;
+        private final int lineIndex;
+        private final Modifier modifier;
+        private final FinalState finalState;
+        private final String cls;
+        private final String className;
+        private final String name;
+
+        private Line(Renamer renamer, String resourceName, int lineIndex, Modifier modifier, FinalState finalState, String cls, String className, String name) {
+            this.renamer = renamer;
+            this.resourceName = resourceName;
+            this.lineIndex = lineIndex;
+            this.modifier = modifier;
+            this.finalState = finalState;
+            this.cls = cls;
+            this.className = className;
+            this.name = name;
+        }
+
+        /**
+         * The outer class of a targeted inner class, whose InnerClasses entry is transformed as well.
+         */
+        private String parentClassName() {
+            if (this.name != null)
+                return null;
+            //Java uses this to identify inner classes, Scala/others use it for synthetics. Either way we should be fine as it will skip over classes that don't exist.
+            int idx = this.className.lastIndexOf('$');
+            return idx == -1 ? null : this.className.substring(0, idx);
+        }
+
+        /**
+         * The targets of this line in a normalized form, to find conflicts without materializing it.
+         */
+        private List<String> targets() {
+            if (this.name == null)
+                return parentClassName() == null ? Collections.singletonList(this.className) : Arrays.asList(this.className, this.className + " INNERCLASS");
+            return Collections.singletonList(this.className + '.' + this.name.replace('.', '/'));
+        }
+
+        private String origin() {
+            return this.resourceName + ':' + this.lineIndex;
+        }
+
+        /**
+         * Parses and renames the transformers of this line.
+         *
+         * @param owner The only class to return the transformers of, or {@code null} for every class
+         */
+        private List<AccessTransformer> materialize(String owner) {
+            List<AccessTransformer> ats = new ArrayList<>(1);
+            Target<?> target;
+            if (this.name == null) { // Class
+                String parent = parentClassName();
+                if (parent != null && (owner == null || owner.equals(parent)))
+                    ats.add(new AccessTransformer(new InnerClassTarget(parent, this.className), this.modifier, this.finalState, this.resourceName, this.lineIndex));
+                if (owner != null && !owner.equals(this.className))
+                    return ats;
+                target = new ClassTarget(this.className);
+            } else if ("*".equals(this.name)) { // Field Wildcard
+                target = new WildcardTarget(this.className, false);
+            } else if ("*()".equals(this.name)) { // Method Wildcard
+                target = new WildcardTarget(this.className, true);
+            } else if (this.name.indexOf('(') == -1) { // Fields
+                target = new FieldTarget(this.className, this.renamer.mapFieldName(this.cls, this.name, null));
+            } else { // Methods
+                int idx = this.name.indexOf('(');
+                String desc = this.name.substring(idx).replace('.', '/');
+                target = new MethodTarget(this.className, this.renamer.mapMethodName(this.cls, this.name.substring(0, idx), desc), this.renamer.mapMethodDesc(desc));
+            }
+            ats.add(new AccessTransformer(target, this.modifier, this.finalState, this.resourceName, this.lineIndex));
+            return ats;
         }
     }
 }